@@ -0,0 +1,257 @@
+package gitplit;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+
+/* Line-level authorship of a file: the commit that last changed each of its lines.
+ * The history is walked from the blamed commit, skipping every commit that tracks the same blob as its parent, so
+   that lines are only mapped through a diff where the file actually changed.
+ * Results are cached in Repository.BLAME, one file per file name and commit that introduced a version of the file.
+   The owners of a version only depend on the history of the commit that introduced it, while the same contents may
+   come back in another history, so the cache is not keyed by blob ID. The walk stops at any version of the file
+   found in the cache, so that blaming again after new commits only goes through the new versions.
+ * Cache format: magic, number of commits, their 32-byte raw IDs, number of lines, then the position of the commit
+   of each line in that list. */
+class Blame {
+
+    private static final int MAGIC = 0x47504231;
+
+    /* Lines of the blamed file whose commit is still unknown, with their position in the version of the file
+       tracked by the commit with COMMITID. */
+    private static class Suspect {
+        final ObjectId commitID;
+        final String blobID;
+        int[] blamedLines;
+        int[] lines;
+
+        Suspect(ObjectId commitID, String blobID, int[] blamedLines, int[] lines) {
+            this.commitID = commitID;
+            this.blobID = blobID;
+            this.blamedLines = blamedLines;
+            this.lines = lines;
+        }
+
+        /* Adds the lines of OTHER, a suspect of the same commit. */
+        void merge(Suspect other) {
+            int count = lines.length;
+            blamedLines = Arrays.copyOf(blamedLines, count + other.lines.length);
+            lines = Arrays.copyOf(lines, count + other.lines.length);
+            System.arraycopy(other.blamedLines, 0, blamedLines, count, other.lines.length);
+            System.arraycopy(other.lines, 0, lines, count, other.lines.length);
+        }
+    }
+
+    /* Prints each line of the file named FILENAME as tracked by the commit with COMMITID of REPOSITORY into STREAM,
+       after the abbreviated ID and time of the commit that last changed it. */
+    static void print(Repository repository, String fileName, ObjectId commitID, OutputStream stream)
+            throws IOException {
+        String blobID = repository.readCommit(commitID).trackingFiles().get(fileName);
+        byte[] contents = repository.readBlob(blobID);
+        int[] starts = Diff.lineStarts(contents);
+        ObjectId[] owners = blame(repository, fileName, commitID, blobID, starts.length - 1);
+
+        HashMap<ObjectId, String> times = new HashMap<>();
+        int width = String.valueOf(owners.length).length();
+        BufferedOutputStream output = new BufferedOutputStream(stream, 1 << 16);
+        for (int i = 0; i < owners.length; i++) {
+            String time = times.computeIfAbsent(owners[i], id -> repository.readCommit(id).time());
+            String prefix = String.format("%s (%s %" + width + "d) ", owners[i].toHex().substring(0, 8), time, i + 1);
+            output.write(prefix.getBytes(StandardCharsets.UTF_8));
+            output.write(contents, starts[i], starts[i + 1] - starts[i]);
+            if (contents[starts[i + 1] - 1] != '\n') {
+                output.write('\n');
+            }
+        }
+        output.flush();
+    }
+
+    /* Returns the ID of the commit that last changed each of the LINECOUNT lines of the file named FILENAME, which
+       the commit with COMMITID of REPOSITORY tracks as the blob with BLOBID. */
+    static ObjectId[] blame(Repository repository, String fileName, ObjectId commitID, String blobID, int lineCount)
+            throws IOException {
+        ObjectId[] owners = new ObjectId[lineCount];
+        int[] all = new int[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            all[i] = i;
+        }
+        HashMap<ObjectId, Suspect> pending = new HashMap<>();
+        ArrayDeque<ObjectId> toVisit = new ArrayDeque<>();
+        pending.put(commitID, new Suspect(commitID, blobID, all, all.clone()));
+        toVisit.add(commitID);
+        /* Commit that introduced the blamed version of the file, which keys its cache. */
+        ObjectId introducedID = null;
+
+        while (!toVisit.isEmpty()) {
+            Suspect suspect = pending.remove(toVisit.poll());
+
+            /* Skips the commits that track the same version of the file as one of their parents. */
+            ObjectId changeID = suspect.commitID;
+            Commit change = repository.readCommit(changeID);
+            boolean merged = false;
+            while (!merged) {
+                ObjectId sameID = null;
+                Commit same = null;
+                for (ObjectId parentID : parents(repository, changeID, change)) {
+                    Commit parent = repository.readCommit(parentID);
+                    if (suspect.blobID.equals(parent.trackingFiles().get(fileName))) {
+                        sameID = parentID;
+                        same = parent;
+                        break;
+                    }
+                }
+                if (sameID == null) {
+                    break;
+                } else if (pending.containsKey(sameID)) {
+                    pending.get(sameID).merge(suspect);
+                    merged = true;
+                }
+                changeID = sameID;
+                change = same;
+            }
+            if (merged) {
+                continue;
+            }
+            ObjectId[] cached = readCache(repository, fileName, changeID);
+            if (introducedID == null) {
+                introducedID = changeID;
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            if (cached != null) {
+                for (int i = 0; i < suspect.lines.length; i++) {
+                    owners[suspect.blamedLines[i]] = cached[suspect.lines[i]];
+                }
+                continue;
+            }
+
+            /* Passes the lines the change kept from a parent on to that parent, and blames the change for the rest. */
+            byte[] contents = null;
+            for (ObjectId parentID : parents(repository, changeID, change)) {
+                String parentBlobID = repository.readCommit(parentID).trackingFiles().get(fileName);
+                if (parentBlobID == null || suspect.lines.length == 0) {
+                    continue;
+                }
+                if (contents == null) {
+                    contents = repository.readBlob(suspect.blobID);
+                }
+                int[] matches = Diff.matchLines(repository.readBlob(parentBlobID), contents);
+                Suspect passed = new Suspect(parentID, parentBlobID, new int[suspect.lines.length],
+                                             new int[suspect.lines.length]);
+                Suspect kept = new Suspect(changeID, suspect.blobID, new int[suspect.lines.length],
+                                           new int[suspect.lines.length]);
+                int passedCount = 0;
+                int keptCount = 0;
+                for (int i = 0; i < suspect.lines.length; i++) {
+                    int match = matches[suspect.lines[i]];
+                    if (match >= 0) {
+                        passed.blamedLines[passedCount] = suspect.blamedLines[i];
+                        passed.lines[passedCount++] = match;
+                    } else {
+                        kept.blamedLines[keptCount] = suspect.blamedLines[i];
+                        kept.lines[keptCount++] = suspect.lines[i];
+                    }
+                }
+                if (passedCount > 0) {
+                    passed.blamedLines = Arrays.copyOf(passed.blamedLines, passedCount);
+                    passed.lines = Arrays.copyOf(passed.lines, passedCount);
+                    if (pending.containsKey(parentID)) {
+                        pending.get(parentID).merge(passed);
+                    } else {
+                        pending.put(parentID, passed);
+                        toVisit.add(parentID);
+                    }
+                }
+                kept.blamedLines = Arrays.copyOf(kept.blamedLines, keptCount);
+                kept.lines = Arrays.copyOf(kept.lines, keptCount);
+                suspect = kept;
+            }
+            for (int blamedLine : suspect.blamedLines) {
+                owners[blamedLine] = changeID;
+            }
+        }
+        writeCache(repository, fileName, introducedID, owners);
+        return owners;
+    }
+
+    /* Returns the IDs of the parents of COMMIT of REPOSITORY, whose ID is COMMITID. A shallow commit has none. */
+    private static ArrayList<ObjectId> parents(Repository repository, ObjectId commitID, Commit commit) {
+        ArrayList<ObjectId> parents = new ArrayList<>();
+        if (repository.isShallow(commitID)) {
+            return parents;
+        }
+        if (commit.parentID() != null) {
+            parents.add(commit.parent());
+        }
+        if (commit.secondParentID() != null) {
+            parents.add(commit.secondParent());
+        }
+        return parents;
+    }
+
+    /* Returns the cache file of REPOSITORY of the file named FILENAME as introduced by the commit with COMMITID. */
+    private static File cacheFile(Repository repository, String fileName, ObjectId commitID) {
+        return Utils.subFile(repository.BLAME, Utils.sha3(fileName + "\0" + commitID.toHex()));
+    }
+
+    /* Returns the cached commit of each line of the file named FILENAME as introduced by the commit with COMMITID,
+       or null if the cache of REPOSITORY does not have it. */
+    private static ObjectId[] readCache(Repository repository, String fileName, ObjectId commitID) {
+        File cache = cacheFile(repository, fileName, commitID);
+        if (!Utils.exists(cache)) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(Utils.readAsBytes(cache)))) {
+            if (input.readInt() != MAGIC) {
+                return null;
+            }
+            ObjectId[] commitIDs = new ObjectId[input.readInt()];
+            for (int i = 0; i < commitIDs.length; i++) {
+                byte[] id = new byte[ObjectId.SIZE];
+                input.readFully(id);
+                commitIDs[i] = ObjectId.fromBytes(id, 0);
+            }
+            ObjectId[] owners = new ObjectId[input.readInt()];
+            for (int i = 0; i < owners.length; i++) {
+                owners[i] = commitIDs[input.readInt()];
+            }
+            return owners;
+        } catch (IOException | IllegalArgumentException | ArrayIndexOutOfBoundsException exc) {
+            return null;
+        }
+    }
+
+    /* Caches OWNERS, the commit of each line of the file named FILENAME as introduced by the commit with COMMITID, in
+       REPOSITORY. */
+    private static void writeCache(Repository repository, String fileName, ObjectId commitID, ObjectId[] owners)
+            throws IOException {
+        LinkedHashMap<ObjectId, Integer> positions = new LinkedHashMap<>();
+        for (ObjectId owner : owners) {
+            positions.putIfAbsent(owner, positions.size());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(MAGIC);
+        output.writeInt(positions.size());
+        for (ObjectId owner : positions.keySet()) {
+            owner.write(output);
+        }
+        output.writeInt(owners.length);
+        for (ObjectId owner : owners) {
+            output.writeInt(positions.get(owner));
+        }
+        output.flush();
+
+        Utils.writeAtomically(cacheFile(repository, fileName, commitID), bytes.toByteArray());
+    }
+
+}
\ No newline at end of file
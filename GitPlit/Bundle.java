@@ -0,0 +1,101 @@
+package gitplit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+/* A bundle of objects streamed from one repository to another by fetch() and push().
+ * Format: magic, version, then one entry per object (kind byte, 32-byte raw ID, length, compressed contents),
+   ended by a zero kind byte. Contents are compressed the way packs store them, so that the receiving side
+   writes them into its packs as they are. */
+class Bundle {
+
+    static final byte COMMIT = 1;
+    static final byte BLOB = 2;
+    private static final byte END = 0;
+    private static final int MAGIC = 0x47504244;
+    private static final int VERSION = 1;
+
+    /* Writes a bundle into a stream, one object at a time. */
+    static class Writer {
+
+        private final DataOutputStream output;
+        private long bytes = 0;
+
+        Writer(OutputStream stream) throws IOException {
+            output = new DataOutputStream(new BufferedOutputStream(stream));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+        }
+
+        /* Adds the object of KIND with ID and CONTENTS. */
+        void add(byte kind, ObjectId id, byte[] contents) throws IOException {
+            byte[] compressed = Pack.compress(contents);
+            output.writeByte(kind);
+            id.write(output);
+            output.writeInt(compressed.length);
+            output.write(compressed);
+            bytes += compressed.length;
+        }
+
+        /* Returns the number of compressed bytes added so far. */
+        long bytes() {
+            return bytes;
+        }
+
+        /* Ends the bundle and closes the stream. */
+        void finish() throws IOException {
+            output.writeByte(END);
+            output.close();
+        }
+
+    }
+
+    /* Reads the bundle streamed by SOURCE into new packs of REPOSITORY.
+     * The packs are not closed, since the ancestors of the bundled commits may be loose in REPOSITORY.
+     * The blob pack is finished first, so that no commit is visible before its blobs.
+     * Returns the number of commits and blobs read.
+     * Throws IllegalArgumentException if SOURCE is not a bundle. */
+    static int[] unbundle(InputStream source, Repository repository) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(source));
+        if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+            throw new IllegalArgumentException("Not a GitPlit bundle.");
+        }
+        File packs = repository.PACKS;
+        Pack.Writer commits = new Pack.Writer(packs, 0);
+        Pack.Writer blobs = new Pack.Writer(packs, Pack.FLAG_BLOBS);
+        try {
+            byte kind;
+            while ((kind = input.readByte()) != END) {
+                byte[] id = new byte[ObjectId.SIZE];
+                input.readFully(id);
+                byte[] compressed = new byte[input.readInt()];
+                input.readFully(compressed);
+                (kind == BLOB ? blobs : commits).addCompressed(ObjectId.fromBytes(id, 0), compressed);
+            }
+        } catch (IOException | RuntimeException exc) {
+            commits.abort();
+            blobs.abort();
+            throw exc;
+        }
+        int[] counts = {commits.size(), blobs.size()};
+        if (blobs.size() > 0) {
+            blobs.finish();
+        } else {
+            blobs.abort();
+        }
+        if (commits.size() > 0) {
+            commits.finish();
+        } else {
+            commits.abort();
+        }
+        return counts;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,167 @@
+package gitplit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+
+/* Bloom filters of the paths each commit changed from its first parent, kept in Repository.CHANGED_PATHS next to the
+   commits so that path-limited history reads one small file per commit instead of the commit and its parent.
+ * A filter tells that a commit may have changed a path, or that it definitely did not. Only the commits that may
+   have changed it need to be compared with their first parent.
+ * Filters are written by Repository.addCommit() from the staged files. Commits without one, such as fetched commits or
+   commits made before filters existed, get theirs on first use.
+ * File format: magic, number of parents, their 32-byte raw IDs, number of 64-bit words of the filter, then the
+   words. A commit that changed more than MAX_PATHS paths has no words, and may have changed any path. */
+class ChangedPaths {
+
+    private static final int MAGIC = 0x47504246;
+    /* Bits per changed path and number of hash functions, for about 1% of false positives. */
+    private static final int BITS_PER_PATH = 10;
+    private static final int HASHES = 7;
+    /* Number of changed paths above which a commit gets no filter. */
+    static final int MAX_PATHS = 512;
+
+    /* The parents of a commit and the filter of the paths it changed. */
+    static class Filter {
+        final ObjectId[] parentIDs;
+        /* Bits of the filter, or null if the commit may have changed any path. */
+        private final long[] words;
+
+        Filter(ObjectId[] parentIDs, long[] words) {
+            this.parentIDs = parentIDs;
+            this.words = words;
+        }
+
+        /* Returns whether the commit may have changed the file named FILENAME. False means it did not. */
+        boolean mayContain(String fileName) {
+            if (words == null) {
+                return true;
+            }
+            long hash = hash(fileName);
+            long step = Utils.mix(hash) | 1;
+            long bits = 64L * words.length;
+            for (int i = 0; i < HASHES; i++) {
+                long bit = Long.remainderUnsigned(hash + i * step, bits);
+                if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /* Returns the filter of the commit with COMMITID in REPOSITORY, computing and storing it first if it has none
+       yet. */
+    static Filter read(Repository repository, ObjectId commitID) {
+        Filter filter = readFile(repository, commitID);
+        if (filter != null) {
+            return filter;
+        }
+        Commit commit = repository.readCommit(commitID);
+        HashMap<String, String> trackingFiles = commit.trackingFiles();
+        HashMap<String, String> parentFiles = commit.parentID() == null || repository.isShallow(commitID)
+                                              ? new HashMap<>()
+                                              : repository.readCommit(commit.parent()).trackingFiles();
+        HashSet<String> changed = new HashSet<>();
+        for (HashMap.Entry<String, String> ent : trackingFiles.entrySet()) {
+            if (!ent.getValue().equals(parentFiles.get(ent.getKey()))) {
+                changed.add(ent.getKey());
+            }
+        }
+        for (String fileName : parentFiles.keySet()) {
+            if (!trackingFiles.containsKey(fileName)) {
+                changed.add(fileName);
+            }
+        }
+        return write(repository, commitID, commit, changed);
+    }
+
+    /* Stores the filter of COMMIT of REPOSITORY, whose ID is COMMITID, given CHANGED, the names of the files it
+       changed from its first parent. CHANGED may name files it did not change, which only costs more comparisons.
+       Returns the filter. */
+    static Filter write(Repository repository, ObjectId commitID, Commit commit, Collection<String> changed) {
+        ArrayList<ObjectId> parentIDs = new ArrayList<>();
+        if (commit.parentID() != null) {
+            parentIDs.add(commit.parent());
+        }
+        if (commit.hasSecondParent()) {
+            parentIDs.add(commit.secondParent());
+        }
+        long[] words = null;
+        if (changed.size() <= MAX_PATHS) {
+            words = new long[Math.max(1, (changed.size() * BITS_PER_PATH + 63) / 64)];
+            long bits = 64L * words.length;
+            for (String fileName : changed) {
+                long hash = hash(fileName);
+                long step = Utils.mix(hash) | 1;
+                for (int i = 0; i < HASHES; i++) {
+                    long bit = Long.remainderUnsigned(hash + i * step, bits);
+                    words[(int) (bit >>> 6)] |= 1L << bit;
+                }
+            }
+        }
+        Filter filter = new Filter(parentIDs.toArray(new ObjectId[0]), words);
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeInt(MAGIC);
+            output.writeInt(parentIDs.size());
+            for (ObjectId parentID : parentIDs) {
+                parentID.write(output);
+            }
+            output.writeInt(words == null ? 0 : words.length);
+            for (int i = 0; words != null && i < words.length; i++) {
+                output.writeLong(words[i]);
+            }
+            output.flush();
+
+            Utils.writeAtomically(Utils.subFile(repository.CHANGED_PATHS, commitID.toHex()), bytes.toByteArray());
+        } catch (IOException exc) {
+            throw new IllegalArgumentException(exc.getMessage());
+        }
+        return filter;
+    }
+
+    /* Returns the stored filter of the commit with COMMITID in REPOSITORY, or null if it has none. */
+    private static Filter readFile(Repository repository, ObjectId commitID) {
+        File file = Utils.subFile(repository.CHANGED_PATHS, commitID.toHex());
+        if (!Utils.exists(file)) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(Utils.readAsBytes(file)))) {
+            if (input.readInt() != MAGIC) {
+                return null;
+            }
+            ObjectId[] parentIDs = new ObjectId[input.readInt()];
+            for (int i = 0; i < parentIDs.length; i++) {
+                byte[] id = new byte[ObjectId.SIZE];
+                input.readFully(id);
+                parentIDs[i] = ObjectId.fromBytes(id, 0);
+            }
+            long[] words = new long[input.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = input.readLong();
+            }
+            return new Filter(parentIDs, words.length == 0 ? null : words);
+        } catch (IOException | IllegalArgumentException | NegativeArraySizeException exc) {
+            return null;
+        }
+    }
+
+    /* Returns the 64-bit FNV-1a hash of FILENAME, scrambled so that its bits are evenly spread. */
+    private static long hash(String fileName) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : fileName.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return Utils.mix(hash);
+    }
+
+}
\ No newline at end of file
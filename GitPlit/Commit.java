@@ -1,15 +1,21 @@
 package gitplit;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Map;
 
 
 /* Commit objects used to store individual commit information. */
 @SuppressWarnings("unchecked")
 public class Commit implements Serializable {
 
+    /* Fixed so that adding methods does not make the existing commit files unreadable. */
+    private static final long serialVersionUID = 3802400144668664927L;
+    
     /* Commit message. */
     private String message;
     /* Commit time. */
@@ -18,43 +24,52 @@ public class Commit implements Serializable {
     private String parentID;
     /* Commit ID of its optional second parent. Null by default. */
     private String secondParentID = null;
-    /* Name and content of all files tracked by this commit. */
-    private HashMap<String, byte[]> trackingFiles;
+    /* Name and blob ID of all files tracked by this commit. The contents are stored as blobs in Repository.BLOBS. */
+    private HashMap<String, String> trackingFiles;
+    /* Contents of the files of a commit written before file contents were moved to Repository.BLOBS, by blob ID.
+       Left for the repository reading the commit to store as blobs. */
+    private transient HashMap<String, byte[]> legacyContents = new HashMap<>();
     
-    public Commit(String m, String t) {
+    /* Creates a commit of the files staged in REPOSITORY, whose parent is its head commit. */
+    public Commit(String m, String t, Repository repository) {
         message = m;
         time = t;
-        setUp();
-        addFiles();
-        removeFiles();
+        setUp(repository);
+        addFiles(repository);
+        removeFiles(repository);
     }
     
-    public void setUp() {
-        if (Utils.readAsString(Base.HEAD_COMMIT).isEmpty()) {
+    /* Creates a commit tracking TRACKINGFILES directly, as fast-import builds them, with PARENTID and the optional
+       SECONDPARENTID. */
+    Commit(String m, String t, String parentID, String secondParentID, HashMap<String, String> trackingFiles) {
+        message = m;
+        time = t;
+        this.parentID = parentID;
+        this.secondParentID = secondParentID;
+        this.trackingFiles = trackingFiles;
+    }
+    
+    public void setUp(Repository repository) {
+        if (Utils.readAsString(repository.HEAD_COMMIT).isEmpty()) {
             parentID = null;
             trackingFiles = new HashMap<>();
             return;
         }
-        parentID = Utils.readAsString(Base.HEAD_COMMIT);
-        Commit parent = Utils.readObject(Utils.subFile(Base.COMMITS, parentID), Commit.class);
-        trackingFiles = (HashMap<String, byte[]>) parent.trackingFiles().clone();
+        parentID = Utils.readAsString(repository.HEAD_COMMIT);
+        Commit parent = repository.readCommit(parentID);
+        trackingFiles = (HashMap<String, String>) parent.trackingFiles().clone();
     }
 
-    public void addFiles() {
-        File[] listOfAddedFiles = Base.ADDITIONS.listFiles();
+    public void addFiles(Repository repository) {
+        File[] listOfAddedFiles = Utils.listFiles(repository.ADDITIONS);
         for (File a : listOfAddedFiles) {
             String name = a.getName();
-            byte[] contents = Utils.readAsBytes(a);
-            if (!trackingFiles.containsKey(name)) {
-                trackingFiles.put(name, contents);
-            } else if (!Arrays.equals(trackingFiles.get(name), contents)) {
-                trackingFiles.replace(name, contents);
-            }
+            trackingFiles.put(name, repository.writeBlob(a));
         }
     }
     
-    public void removeFiles() {
-        for (File toBeUntracked : Base.REMOVALS.listFiles()) {
+    public void removeFiles(Repository repository) {
+        for (File toBeUntracked : Utils.listFiles(repository.REMOVALS)) {
             if (trackingFiles.containsKey(toBeUntracked.getName())) {
                 trackingFiles.remove(toBeUntracked.getName());
             }
@@ -80,10 +95,42 @@ public class Commit implements Serializable {
     public String secondParentID() {
         return secondParentID;
     }
+    
+    /* Returns the ID of its parent, or null if it has none.
+     * The IDs of the commit file stay hexadecimal Strings, since commit IDs are the hash of the file. */
+    ObjectId parent() {
+        return ObjectId.fromHex(parentID);
+    }
+    
+    /* Returns the ID of its second parent, or null if it has none. */
+    ObjectId secondParent() {
+        return ObjectId.fromHex(secondParentID);
+    }
 
-    public HashMap<String, byte[]> trackingFiles() {
+    public HashMap<String, String> trackingFiles() {
         return trackingFiles;
     }
+    
+    /* Returns the contents of the files of a commit written before file contents were moved to Repository.BLOBS,
+       which have to be stored as blobs. Empty for any other commit. */
+    public Collection<byte[]> legacyContents() {
+        return legacyContents.values();
+    }
+    
+    /* Reads a commit, upgrading the ones written before file contents were moved to Repository.BLOBS.
+     * Their tracked files map to the contents themselves, which are replaced by the blob ID and kept in
+       legacyContents until the repository stores them. */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        legacyContents = new HashMap<>();
+        for (Map.Entry<String, Object> ent : ((HashMap<String, Object>) (HashMap) trackingFiles).entrySet()) {
+            if (ent.getValue() instanceof byte[]) {
+                String blobID = Utils.sha3((byte[]) ent.getValue());
+                legacyContents.put(blobID, (byte[]) ent.getValue());
+                ent.setValue(blobID);
+            }
+        }
+    }
 
     public boolean hasSecondParent() {
         return secondParentID != null;
@@ -0,0 +1,524 @@
+package gitplit;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+
+/* Line differences between two versions of the tracked files, printed in the unified format.
+ * Files with the same blob ID are skipped without being read. Changed files are compared with the linear-space
+   variant of Myers' algorithm: each step finds the middle snake of the shortest edit script from both ends, then
+   recurses on the two halves, so that memory stays linear in the number of lines.
+ * Output goes through a buffer that is flushed after each file, so that a large diff is never held as a whole. */
+class Diff {
+
+    /* Number of unchanged lines printed around each change. */
+    private static final int CONTEXT = 3;
+    /* Edit distance up to which a shortest edit script is always searched for. */
+    private static final int MIN_COST = 256;
+
+    /* A version of the tracked files: a commit, the staging area or the working tree.
+     * Files stored as blobs are given by their blob ID. Files of the staging area or the working tree are given as
+       files, and only hashed when compared. */
+    static class Version {
+
+        /* Repository storing the blobs. */
+        private final Repository repository;
+        private final HashMap<String, String> blobIDs = new HashMap<>();
+        private final HashMap<String, File> files = new HashMap<>();
+        /* Blob IDs of the files hashed so far. */
+        private final HashMap<String, String> hashed = new HashMap<>();
+
+        Version(Repository repository) {
+            this.repository = repository;
+        }
+
+        /* Adds the file named NAME stored as the blob with BLOBID. */
+        void putBlob(String name, String blobID) {
+            files.remove(name);
+            blobIDs.put(name, blobID);
+        }
+
+        /* Adds the file named NAME whose contents are in FILE. */
+        void putFile(String name, File file) {
+            blobIDs.remove(name);
+            hashed.remove(name);
+            files.put(name, file);
+        }
+
+        /* Removes the file named NAME. */
+        void remove(String name) {
+            blobIDs.remove(name);
+            hashed.remove(name);
+            files.remove(name);
+        }
+
+        /* Returns the names of all files of this version. */
+        Set<String> names() {
+            HashSet<String> names = new HashSet<>(blobIDs.keySet());
+            names.addAll(files.keySet());
+            return names;
+        }
+
+        /* Returns whether this version has a file named NAME. */
+        boolean contains(String name) {
+            return blobIDs.containsKey(name) || files.containsKey(name);
+        }
+
+        /* Returns the blob ID of the file named NAME, hashing it if needed. */
+        String blobID(String name) {
+            String blobID = blobIDs.get(name);
+            if (blobID == null) {
+                blobID = hashed.computeIfAbsent(name, n -> Utils.sha3(files.get(n)));
+            }
+            return blobID;
+        }
+
+        /* Returns the contents of the file named NAME. */
+        byte[] contents(String name) {
+            File file = files.get(name);
+            return file != null ? Utils.readAsBytes(file) : repository.readBlob(blobIDs.get(name));
+        }
+
+    }
+
+    private final BufferedOutputStream output;
+    /* Lines of the file being compared, as indexes into its own list of distinct lines. */
+    private int[] a;
+    private int[] b;
+    /* Whether each line of the old file is deleted, and each line of the new file inserted. */
+    private boolean[] deleted;
+    private boolean[] inserted;
+
+    /* Starts a diff printed into STREAM. */
+    Diff(OutputStream stream) {
+        output = new BufferedOutputStream(stream, 1 << 16);
+    }
+
+    /* Starts a diff that only matches lines, for matchLines(). */
+    private Diff() {
+        output = null;
+    }
+
+    /* Prints the differences between OLDVERSION and NEWVERSION, one file at a time in name order.
+     * Files of NEWVERSION found by Renames.detect() to be renamed or copied are compared with their source, and
+       the removed source of a rename is not printed on its own.
+     * Returns the number of files that differ. */
+    int compare(Version oldVersion, Version newVersion) throws IOException {
+        TreeSet<String> names = new TreeSet<>(oldVersion.names());
+        names.addAll(newVersion.names());
+        ArrayList<String> removed = new ArrayList<>();
+        ArrayList<String> added = new ArrayList<>();
+        ArrayList<String> modified = new ArrayList<>();
+        for (String name : names) {
+            boolean inOld = oldVersion.contains(name);
+            boolean inNew = newVersion.contains(name);
+            if (!inNew) {
+                removed.add(name);
+            } else if (!inOld) {
+                added.add(name);
+            } else if (!oldVersion.blobID(name).equals(newVersion.blobID(name))) {
+                modified.add(name);
+            }
+        }
+        TreeMap<String, Renames.Pair> pairs = Renames.detect(oldVersion, removed, newVersion, added, modified);
+        HashSet<String> renamedFrom = new HashSet<>();
+        for (Renames.Pair pair : pairs.values()) {
+            if (!pair.copy) {
+                renamedFrom.add(pair.from);
+            }
+        }
+
+        int changed = 0;
+        for (String name : names) {
+            Renames.Pair pair = pairs.get(name);
+            boolean inOld = oldVersion.contains(name) && !renamedFrom.contains(name);
+            boolean inNew = newVersion.contains(name);
+            if (renamedFrom.contains(name) && !inNew) {
+                continue;
+            } else if (inOld && inNew && oldVersion.blobID(name).equals(newVersion.blobID(name))) {
+                continue;
+            }
+            String oldName = pair != null ? pair.from : name;
+            byte[] oldContents = inOld || pair != null ? oldVersion.contents(oldName) : new byte[0];
+            byte[] newContents = inNew ? newVersion.contents(name) : new byte[0];
+            print("diff --gitplit a/" + oldName + " b/" + name + "\n");
+            if (pair != null) {
+                String kind = pair.copy ? "copy" : "rename";
+                print("similarity index " + pair.similarity + "%\n" + kind + " from " + pair.from + "\n" + kind
+                      + " to " + name + "\n");
+                if (pair.similarity == 100 && Arrays.equals(oldContents, newContents)) {
+                    changed++;
+                    continue;
+                }
+            } else if (!inOld) {
+                print("new file\n");
+            } else if (!inNew) {
+                print("deleted file\n");
+            }
+            if (isBinary(oldContents) || isBinary(newContents)) {
+                print("Binary files differ\n");
+            } else {
+                print("--- " + (inOld || pair != null ? "a/" + oldName : "/dev/null") + "\n");
+                print("+++ " + (inNew ? "b/" + name : "/dev/null") + "\n");
+                compareLines(oldContents, newContents);
+            }
+            output.flush();
+            changed++;
+        }
+        output.flush();
+        return changed;
+    }
+
+    /* Returns whether CONTENTS looks binary, i.e. has a zero byte in its first 8000 bytes. */
+    private static boolean isBinary(byte[] contents) {
+        for (int i = 0; i < Math.min(contents.length, 8000); i++) {
+            if (contents[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* Returns the offsets at which the lines of CONTENTS start, followed by the length of CONTENTS.
+     * The last line may not end with a newline. */
+    static int[] lineStarts(byte[] contents) {
+        int count = 0;
+        for (byte c : contents) {
+            if (c == '\n') {
+                count++;
+            }
+        }
+        boolean unterminated = contents.length > 0 && contents[contents.length - 1] != '\n';
+        int[] starts = new int[count + (unterminated ? 1 : 0) + 1];
+        int line = 1;
+        for (int i = 0; i < contents.length; i++) {
+            if (contents[i] == '\n' && i + 1 < contents.length) {
+                starts[line++] = i + 1;
+            }
+        }
+        starts[starts.length - 1] = contents.length;
+        return starts;
+    }
+
+    /* Returns the lines of CONTENTS starting at STARTS as indexes into DISTINCT, adding new lines to DISTINCT.
+     * Lines are compared with their newline, so that a last line without one differs from the same line with one. */
+    private static int[] intern(byte[] contents, int[] starts, HashMap<String, Integer> distinct) {
+        int[] lines = new int[starts.length - 1];
+        for (int i = 0; i < lines.length; i++) {
+            String line = new String(contents, starts[i], starts[i + 1] - starts[i], StandardCharsets.ISO_8859_1);
+            Integer index = distinct.putIfAbsent(line, distinct.size());
+            lines[i] = index == null ? distinct.size() - 1 : index;
+        }
+        return lines;
+    }
+
+    /* Prints the hunks turning the lines of OLDCONTENTS into the lines of NEWCONTENTS. */
+    private void compareLines(byte[] oldContents, byte[] newContents) throws IOException {
+        int[] oldStarts = lineStarts(oldContents);
+        int[] newStarts = lineStarts(newContents);
+        markChanges(oldContents, oldStarts, newContents, newStarts);
+        printHunks(oldContents, oldStarts, newContents, newStarts);
+        a = b = null;
+        deleted = inserted = null;
+    }
+
+    /* Returns, for each line of NEWCONTENTS, the position of the same line in OLDCONTENTS, or -1 if the line was
+       inserted. Lines are counted from 0. */
+    static int[] matchLines(byte[] oldContents, byte[] newContents) {
+        Diff diff = new Diff();
+        diff.markChanges(oldContents, lineStarts(oldContents), newContents, lineStarts(newContents));
+        int[] matches = new int[diff.b.length];
+        int i = 0;
+        for (int j = 0; j < matches.length; j++) {
+            if (diff.inserted[j]) {
+                matches[j] = -1;
+                continue;
+            }
+            while (diff.deleted[i]) {
+                i++;
+            }
+            matches[j] = i++;
+        }
+        return matches;
+    }
+
+    /* Marks the lines of OLDCONTENTS to delete and the lines of NEWCONTENTS to insert to turn one into the other.
+     * OLDSTARTS and NEWSTARTS are the line starts returned by lineStarts(). */
+    private void markChanges(byte[] oldContents, int[] oldStarts, byte[] newContents, int[] newStarts) {
+        HashMap<String, Integer> distinct = new HashMap<>();
+        int[] oldLines = intern(oldContents, oldStarts, distinct);
+        int[] newLines = intern(newContents, newStarts, distinct);
+        boolean[] inOld = new boolean[distinct.size()];
+        boolean[] inNew = new boolean[distinct.size()];
+        for (int line : oldLines) {
+            inOld[line] = true;
+        }
+        for (int line : newLines) {
+            inNew[line] = true;
+        }
+        
+        /* Lines found in only one file are deleted or inserted anyway. Leaving them out of the comparison keeps
+           it short when most of a file is rewritten. */
+        int[] oldKept = kept(oldLines, inNew);
+        int[] newKept = kept(newLines, inOld);
+        a = new int[oldKept.length];
+        b = new int[newKept.length];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = oldLines[oldKept[i]];
+        }
+        for (int j = 0; j < b.length; j++) {
+            b[j] = newLines[newKept[j]];
+        }
+        deleted = new boolean[a.length];
+        inserted = new boolean[b.length];
+        compareRange(0, a.length, 0, b.length);
+        
+        boolean[] keptDeleted = deleted;
+        boolean[] keptInserted = inserted;
+        deleted = new boolean[oldLines.length];
+        inserted = new boolean[newLines.length];
+        Arrays.fill(deleted, true);
+        Arrays.fill(inserted, true);
+        for (int i = 0; i < oldKept.length; i++) {
+            deleted[oldKept[i]] = keptDeleted[i];
+        }
+        for (int j = 0; j < newKept.length; j++) {
+            inserted[newKept[j]] = keptInserted[j];
+        }
+        a = oldLines;
+        b = newLines;
+    }
+
+    /* Returns the positions of the LINES found in the other file, as told by INOTHER. */
+    private static int[] kept(int[] lines, boolean[] inOther) {
+        int count = 0;
+        for (int line : lines) {
+            if (inOther[line]) {
+                count++;
+            }
+        }
+        int[] kept = new int[count];
+        count = 0;
+        for (int i = 0; i < lines.length; i++) {
+            if (inOther[lines[i]]) {
+                kept[count++] = i;
+            }
+        }
+        return kept;
+    }
+
+    /* Marks the lines to delete from A[ALOW, AHIGH) and to insert from B[BLOW, BHIGH) to turn one into the other. */
+    private void compareRange(int aLow, int aHigh, int bLow, int bHigh) {
+        while (aLow < aHigh && bLow < bHigh && a[aLow] == b[bLow]) {
+            aLow++;
+            bLow++;
+        }
+        while (aLow < aHigh && bLow < bHigh && a[aHigh - 1] == b[bHigh - 1]) {
+            aHigh--;
+            bHigh--;
+        }
+        if (aLow == aHigh) {
+            Arrays.fill(inserted, bLow, bHigh, true);
+            return;
+        } else if (bLow == bHigh) {
+            Arrays.fill(deleted, aLow, aHigh, true);
+            return;
+        }
+
+        int[] split = middleSnake(aLow, aHigh, bLow, bHigh);
+        if (split == null) {
+            Arrays.fill(deleted, aLow, aHigh, true);
+            Arrays.fill(inserted, bLow, bHigh, true);
+            return;
+        }
+        compareRange(aLow, aLow + split[0], bLow, bLow + split[1]);
+        compareRange(aLow + split[0], aHigh, bLow + split[1], bHigh);
+    }
+
+    /* Helper function of compareRange().
+     * Walks the edit graph of A[ALOW, AHIGH) and B[BLOW, BHIGH) forward from the top left and backward from the
+       bottom right, one edit distance at a time, until the two paths overlap.
+     * Returns the point where they meet, relative to (ALOW, BLOW), which lies on a shortest edit script.
+     * Past an edit distance of MIN_COST or the square root of the number of lines, whichever is larger, the search
+       gives up on a shortest script and returns the forward point that got furthest instead, so that comparing two
+       unrelated files does not take quadratic time.
+     * Returns null if the two ranges have no line in common. */
+    private int[] middleSnake(int aLow, int aHigh, int bLow, int bHigh) {
+        int n = aHigh - aLow;
+        int m = bHigh - bLow;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int[] forward = new int[2 * maxD + 2];
+        int[] backward = new int[2 * maxD + 2];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int forwardStart = 0;
+        int forwardEnd = 0;
+        int backwardStart = 0;
+        int backwardEnd = 0;
+        int maxCost = Math.max(MIN_COST, (int) Math.sqrt(n + m));
+
+        for (int d = 0; d < maxD; d++) {
+            for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2) {
+                int i = offset + k;
+                int x = k == -d || (k != d && forward[i - 1] < forward[i + 1]) ? forward[i + 1] : forward[i - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aLow + x] == b[bLow + y]) {
+                    x++;
+                    y++;
+                }
+                forward[i] = x;
+                if (x > n) {
+                    forwardEnd += 2;
+                } else if (y > m) {
+                    forwardStart += 2;
+                } else if (odd) {
+                    int j = offset + delta - k;
+                    if (j >= 0 && j < backward.length && backward[j] != -1 && x >= n - backward[j]) {
+                        return new int[] {x, y};
+                    }
+                }
+            }
+            for (int k = -d + backwardStart; k <= d - backwardEnd; k += 2) {
+                int i = offset + k;
+                int x = k == -d || (k != d && backward[i - 1] < backward[i + 1])
+                        ? backward[i + 1] : backward[i - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aHigh - x - 1] == b[bHigh - y - 1]) {
+                    x++;
+                    y++;
+                }
+                backward[i] = x;
+                if (x > n) {
+                    backwardEnd += 2;
+                } else if (y > m) {
+                    backwardStart += 2;
+                } else if (!odd) {
+                    int j = offset + delta - k;
+                    if (j >= 0 && j < forward.length && forward[j] != -1 && forward[j] >= n - x) {
+                        int forwardX = forward[j];
+                        return new int[] {forwardX, forwardX - (j - offset)};
+                    }
+                }
+            }
+            if (d >= maxCost) {
+                return furthest(forward, offset, d, n, m);
+            }
+        }
+        return null;
+    }
+
+    /* Helper function of middleSnake().
+     * Returns the point furthest from the top left among the forward paths of edit distance D, or null if that
+       point is a corner of the edit graph, from which splitting would not progress. */
+    private static int[] furthest(int[] forward, int offset, int d, int n, int m) {
+        int bestX = 0;
+        int bestY = 0;
+        for (int k = -d; k <= d; k += 2) {
+            int x = forward[offset + k];
+            int y = x - k;
+            if (x >= 0 && x <= n && y >= 0 && y <= m && x + y > bestX + bestY) {
+                bestX = x;
+                bestY = y;
+            }
+        }
+        if (bestX + bestY == 0 || bestX + bestY == n + m) {
+            return null;
+        }
+        return new int[] {bestX, bestY};
+    }
+
+    /* Helper function of compareLines().
+     * Prints the marked lines as hunks, merging changes separated by at most twice CONTEXT unchanged lines. */
+    private void printHunks(byte[] oldContents, int[] oldStarts, byte[] newContents, int[] newStarts)
+            throws IOException {
+        int i = 0;
+        int j = 0;
+        int hunkI = -1;
+        int hunkJ = -1;
+        int endI = 0;
+        int endJ = 0;
+        while (i < a.length || j < b.length) {
+            if ((i < a.length && deleted[i]) || (j < b.length && inserted[j])) {
+                int startI = i;
+                int startJ = j;
+                while (i < a.length && deleted[i]) {
+                    i++;
+                }
+                while (j < b.length && inserted[j]) {
+                    j++;
+                }
+                if (hunkI >= 0 && startI - endI > 2 * CONTEXT) {
+                    printHunk(hunkI, hunkJ, endI, endJ, oldContents, oldStarts, newContents, newStarts);
+                    hunkI = -1;
+                }
+                if (hunkI < 0) {
+                    hunkI = Math.max(0, startI - CONTEXT);
+                    hunkJ = startJ - (startI - hunkI);
+                }
+                endI = i;
+                endJ = j;
+            } else {
+                i++;
+                j++;
+            }
+        }
+        if (hunkI >= 0) {
+            printHunk(hunkI, hunkJ, endI, endJ, oldContents, oldStarts, newContents, newStarts);
+        }
+    }
+
+    /* Helper function of printHunks().
+     * Prints the hunk starting at line HUNKI of the old file and line HUNKJ of the new file, whose last change ends
+       at line ENDI and ENDJ, followed by up to CONTEXT unchanged lines. */
+    private void printHunk(int hunkI, int hunkJ, int endI, int endJ, byte[] oldContents, int[] oldStarts,
+                           byte[] newContents, int[] newStarts) throws IOException {
+        int trailing = Math.min(CONTEXT, a.length - endI);
+        int lastI = endI + trailing;
+        int lastJ = endJ + trailing;
+        print("@@ -" + range(hunkI, lastI - hunkI) + " +" + range(hunkJ, lastJ - hunkJ) + " @@\n");
+        int i = hunkI;
+        int j = hunkJ;
+        while (i < lastI || j < lastJ) {
+            if (i < lastI && deleted[i]) {
+                printLine('-', oldContents, oldStarts, i++);
+            } else if (j < lastJ && inserted[j]) {
+                printLine('+', newContents, newStarts, j++);
+            } else {
+                printLine(' ', oldContents, oldStarts, i++);
+                j++;
+            }
+        }
+    }
+
+    /* Returns the range of COUNT lines starting at line START, as printed in hunk headers. */
+    private static String range(int start, int count) {
+        if (count == 1) {
+            return String.valueOf(start + 1);
+        }
+        return (count == 0 ? start : start + 1) + "," + count;
+    }
+
+    /* Prints the I-th line of CONTENTS, whose lines start at STARTS, after PREFIX. */
+    private void printLine(char prefix, byte[] contents, int[] starts, int i) throws IOException {
+        output.write(prefix);
+        output.write(contents, starts[i], starts[i + 1] - starts[i]);
+        if (contents[starts[i + 1] - 1] != '\n') {
+            print("\n\\ No newline at end of file\n");
+        }
+    }
+
+    /* Prints TEXT. */
+    private void print(String text) throws IOException {
+        output.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,394 @@
+package gitplit;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.Deflater;
+
+
+/* Bulk import of a history read from a text stream, without going through the staging area.
+ * Commits are built in memory from their parent and the file changes of the stream, and written with their blobs
+   into packs, one batch at a time. Branches are only updated once the whole stream has been read, each with a single
+   compare-and-set, so that a failed import leaves them unchanged.
+ * Packs are compressed at Deflater.BEST_SPEED, since compressing whole commits dominates the import otherwise.
+   gc() recompresses them when it rewrites them.
+ * Stream format, one command per line. Blank lines and lines starting with # are skipped.
+ *   blob                      Starts a blob, followed by an optional "mark :N" and by "data".
+ *   commit BRANCH             Starts a commit on BRANCH, followed by an optional "mark :N", an optional
+ *                             "time yyyy/MM/dd HH:mm:ss", "data" holding the message, then optional "from COMMIT",
+ *                             "merge COMMIT", and any number of "M BLOB NAME", "M inline NAME" followed by "data",
+ *                             "D NAME" and "deleteall" changing the files of the parent.
+ *   reset BRANCH              Points BRANCH at the commit given by an optional "from COMMIT", or at nothing, so
+ *                             that its next commit has no parent. A branch left at nothing is not written.
+ *   done                      Ends the stream.
+ *   data N                    Followed by exactly N bytes of contents.
+ * COMMIT is a mark, a full commit ID or a branch. BLOB is a mark or a full blob ID. A commit without "from" follows
+   the current tip of its branch. */
+class FastImport {
+
+    /* Number of objects written into the packs of one batch before they are finished. */
+    static final int BATCH_OBJECTS = 50000;
+    /* Size above which a blob is streamed into a loose object instead of being held in memory. */
+    static final long LARGE_BLOB = 16L << 20;
+    /* Number of imported commits kept in memory. Older ones are read back from their pack. */
+    private static final int CACHED_COMMITS = 1024;
+
+    private final Repository repository;
+    private final InputStream input;
+    /* Line read but not consumed yet, and the number of the last line read. */
+    private String pending = null;
+    private int lineNumber = 0;
+
+    /* IDs of the objects given a mark. */
+    private final HashMap<String, String> marks = new HashMap<>();
+    /* Tip of each branch the stream touched, or null for a branch reset to nothing. */
+    private final LinkedHashMap<String, String> tips = new LinkedHashMap<>();
+    /* Tip of each branch the stream touched before the import, or null if it did not exist. */
+    private final HashMap<String, String> oldTips = new HashMap<>();
+    /* Commits of the batch being written, and the most recently used imported commits. */
+    private final HashSet<ObjectId> batchCommits = new HashSet<>();
+    private final LinkedHashMap<String, Commit> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Commit> eldest) {
+            return size() > CACHED_COMMITS && !batchCommits.contains(ObjectId.fromHex(eldest.getKey()));
+        }
+    };
+    /* Blobs imported so far. */
+    private final HashSet<ObjectId> blobs = new HashSet<>();
+    private Pack.Writer blobWriter = null;
+    private Pack.Writer commitWriter = null;
+    private int commitCount = 0;
+    private int blobCount = 0;
+
+    FastImport(Repository repository, InputStream input) {
+        this.repository = repository;
+        this.input = new BufferedInputStream(input, Utils.BUFFER_SIZE);
+    }
+
+    /* Imports the whole stream, and returns the number of commits and blobs imported and the new tip of each
+       branch.
+     * Throws IllegalStateException, naming the line, if the stream is malformed or names a branch checked out in
+       the repository or one of its worktrees. Nothing is then changed but the packs of the finished batches, which
+       nothing points at. */
+    Repository.ImportResult run() throws IOException {
+        try {
+            for (String line = nextLine(); line != null && !line.equals("done"); line = nextLine()) {
+                if (line.equals("blob")) {
+                    readBlob();
+                } else if (line.startsWith("commit ")) {
+                    readCommit(branch(line.substring("commit ".length())));
+                } else if (line.startsWith("reset ")) {
+                    String branchName = branch(line.substring("reset ".length()));
+                    String from = optional("from ");
+                    tips.put(branchName, from == null ? null : commitID(from));
+                } else {
+                    throw malformed("Unknown command");
+                }
+            }
+            finishBatch();
+        } catch (IOException | RuntimeException exc) {
+            abortBatch();
+            throw exc;
+        }
+
+        LinkedHashMap<String, String> updated = new LinkedHashMap<>();
+        for (Map.Entry<String, String> ent : tips.entrySet()) {
+            if (ent.getValue() != null && !ent.getValue().equals(oldTips.get(ent.getKey()))) {
+                Repository.compareAndSetRef(repository.COMMON, Utils.subFile(repository.BRANCHES, ent.getKey()),
+                                            oldTips.get(ent.getKey()), ent.getValue());
+                updated.put(ent.getKey(), ent.getValue());
+            }
+        }
+        return new Repository.ImportResult(commitCount, blobCount, updated);
+    }
+
+    /* Reads a blob command after its first line. */
+    private void readBlob() throws IOException {
+        String mark = optional("mark ");
+        String blobID = addBlob(expectData());
+        if (mark != null) {
+            marks.put(mark, blobID);
+        }
+    }
+
+    /* Reads a commit command on BRANCHNAME after its first line, and adds the commit. */
+    private void readCommit(String branchName) throws IOException {
+        String mark = optional("mark ");
+        String time = optional("time ");
+        String message = new String(readBytes(expectData()), StandardCharsets.UTF_8);
+        String from = optional("from ");
+        String merge = optional("merge ");
+        String parentID = from != null ? commitID(from) : tips.get(branchName);
+        String secondParentID = merge != null ? commitID(merge) : null;
+
+        HashMap<String, String> trackingFiles = parentID == null ? new HashMap<>()
+                                                : new HashMap<>(commit(parentID).trackingFiles());
+        for (String line = nextLine(); line != null; line = nextLine()) {
+            if (line.startsWith("M ")) {
+                String[] parts = line.split(" ", 3);
+                if (parts.length != 3) {
+                    throw malformed("Expected M BLOB NAME");
+                }
+                trackingFiles.put(fileName(parts[2]), parts[1].equals("inline") ? addBlob(expectData())
+                                                                                : blobID(parts[1]));
+            } else if (line.startsWith("D ")) {
+                trackingFiles.remove(fileName(line.substring("D ".length())));
+            } else if (line.equals("deleteall")) {
+                trackingFiles.clear();
+            } else {
+                pending = line;
+                break;
+            }
+        }
+
+        Commit commit = new Commit(message, time != null ? time : Utils.getCurrentTime(), parentID, secondParentID,
+                                   trackingFiles);
+        byte[] contents = Utils.serialize(commit);
+        String commitID = Utils.sha3(contents);
+        ObjectId id = ObjectId.fromHex(commitID);
+        if (!batchCommits.contains(id) && !repository.objectExists(id, false)) {
+            commitWriter().add(id, contents);
+            batchCommits.add(id);
+            commitCount++;
+        }
+        cache.put(commitID, commit);
+        tips.put(branchName, commitID);
+        if (mark != null) {
+            marks.put(mark, commitID);
+        }
+        if (batchSize() >= BATCH_OBJECTS) {
+            finishBatch();
+        }
+    }
+
+    /* Reads the blob of SIZE bytes that follows, stores it unless it exists already, and returns its ID.
+     * Blobs larger than LARGE_BLOB are streamed into loose objects, others are written into the current batch. */
+    private String addBlob(long size) throws IOException {
+        if (size > LARGE_BLOB) {
+            String blobID = repository.writeBlob(new Data(size), null);
+            if (blobs.add(ObjectId.fromHex(blobID))) {
+                blobCount++;
+            }
+            return blobID;
+        }
+        byte[] contents = readBytes(size);
+        String blobID = Utils.sha3(contents);
+        ObjectId id = ObjectId.fromHex(blobID);
+        if (blobs.add(id) && !repository.objectExists(id, true)) {
+            blobWriter().add(id, contents);
+            blobCount++;
+        }
+        return blobID;
+    }
+
+    /* Returns the commit with COMMITID, imported or already in the repository. Imported commits that are no longer
+       cached are read back from their pack, which finishes the batch if they belong to it. */
+    private Commit commit(String commitID) throws IOException {
+        Commit commit = cache.get(commitID);
+        if (commit == null) {
+            if (batchCommits.contains(ObjectId.fromHex(commitID))) {
+                finishBatch();
+            }
+            commit = repository.readCommit(commitID);
+        }
+        return commit;
+    }
+
+    /* Returns the ID of the commit named REF: a mark, a full commit ID or a branch. */
+    private String commitID(String ref) {
+        String commitID = ref.startsWith(":") ? marks.get(ref) : ref;
+        if (commitID != null && (cache.containsKey(commitID) || batchCommits.contains(ObjectId.parse(commitID))
+                                 || repository.commitExists(commitID))) {
+            return commitID;
+        } else if (tips.get(ref) != null) {
+            return tips.get(ref);
+        } else if (!ref.startsWith(":") && Utils.isFile(Utils.subFile(repository.BRANCHES, ref))) {
+            return Utils.readAsString(Utils.subFile(repository.BRANCHES, ref));
+        }
+        throw malformed("No commit named " + ref);
+    }
+
+    /* Returns the ID of the blob named REF: a mark or a full blob ID. */
+    private String blobID(String ref) {
+        String blobID = ref.startsWith(":") ? marks.get(ref) : ref;
+        if (blobID != null && (blobs.contains(ObjectId.parse(blobID)) || repository.objectExists(blobID, true))) {
+            return blobID;
+        }
+        throw malformed("No blob named " + ref);
+    }
+
+    /* Returns BRANCHNAME, recording its tip before the import the first time it is named.
+     * Throws IllegalStateException if it is not a valid branch name or is checked out. */
+    private String branch(String branchName) {
+        if (branchName.isEmpty() || branchName.contains("/") || branchName.contains("\\")) {
+            throw malformed("Invalid branch name " + branchName);
+        } else if (!oldTips.containsKey(branchName)) {
+            if (repository.checkedOutIn(branchName) != null) {
+                throw malformed("Cannot import into the checked out branch " + branchName);
+            }
+            File branch = Utils.subFile(repository.BRANCHES, branchName);
+            String tip = Utils.isFile(branch) ? Utils.readAsString(branch) : null;
+            oldTips.put(branchName, tip == null || tip.isEmpty() ? null : tip);
+            tips.put(branchName, oldTips.get(branchName));
+        }
+        return branchName;
+    }
+
+    /* Returns FILENAME if files of the working directory can have it.
+     * Throws IllegalStateException otherwise. */
+    private String fileName(String fileName) {
+        if (fileName.isEmpty() || fileName.contains("/") || fileName.contains("\\") || fileName.equals(".")
+            || fileName.equals("..") || fileName.equals(Repository.DIRECTORY_NAME)) {
+            throw malformed("Invalid file name " + fileName);
+        }
+        return fileName;
+    }
+
+    /* Returns the rest of the next line if it starts with PREFIX, or null otherwise, in which case the line is left
+       for the next command. */
+    private String optional(String prefix) throws IOException {
+        String line = nextLine();
+        if (line != null && line.startsWith(prefix)) {
+            return line.substring(prefix.length());
+        }
+        pending = line;
+        return null;
+    }
+
+    /* Reads a "data" line and returns its size. */
+    private long expectData() throws IOException {
+        String size = optional("data ");
+        try {
+            if (size != null && Long.parseLong(size) >= 0) {
+                return Long.parseLong(size);
+            }
+        } catch (NumberFormatException exc) {
+            /* Reported below. */
+        }
+        throw malformed("Expected data N");
+    }
+
+    /* Returns the next SIZE bytes of the stream. */
+    private byte[] readBytes(long size) throws IOException {
+        if (size > LARGE_BLOB) {
+            throw malformed("Data larger than " + LARGE_BLOB + " bytes");
+        }
+        byte[] contents = input.readNBytes((int) size);
+        if (contents.length != size) {
+            throw malformed("The stream ended within data");
+        }
+        return contents;
+    }
+
+    /* Returns the next line that is neither blank nor a comment, or null at the end of the stream. */
+    private String nextLine() throws IOException {
+        if (pending != null) {
+            String line = pending;
+            pending = null;
+            return line;
+        }
+        while (true) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b = input.read();
+            if (b < 0) {
+                return null;
+            }
+            for (; b >= 0 && b != '\n'; b = input.read()) {
+                line.write(b);
+            }
+            lineNumber++;
+            String text = line.toString(StandardCharsets.UTF_8);
+            if (!text.isBlank() && !text.startsWith("#")) {
+                return text;
+            }
+        }
+    }
+
+    /* Returns the exception reporting a malformed stream at the current line. */
+    private IllegalStateException malformed(String reason) {
+        return new IllegalStateException("fast-import: " + reason + " on line " + lineNumber + ".");
+    }
+
+    /* Returns the writer of the blob pack of the current batch, starting it if needed. */
+    private Pack.Writer blobWriter() throws IOException {
+        if (blobWriter == null) {
+            blobWriter = new Pack.Writer(repository.PACKS, Pack.FLAG_BLOBS, Deflater.BEST_SPEED);
+        }
+        return blobWriter;
+    }
+
+    /* Returns the writer of the commit pack of the current batch, starting it if needed. */
+    private Pack.Writer commitWriter() throws IOException {
+        if (commitWriter == null) {
+            commitWriter = new Pack.Writer(repository.PACKS, 0, Deflater.BEST_SPEED);
+        }
+        return commitWriter;
+    }
+
+    /* Returns the number of objects written into the packs of the current batch. Either pack may not be started,
+       such as when every object of a re-imported stream already exists. */
+    private int batchSize() {
+        return (blobWriter == null ? 0 : blobWriter.size()) + (commitWriter == null ? 0 : commitWriter.size());
+    }
+
+    /* Finishes the packs of the current batch, so that its objects can be read. The blob pack is finished first,
+       so that no commit is visible before its blobs. The packs are not closed, since the parents of the imported
+       commits may be loose. */
+    private void finishBatch() throws IOException {
+        for (Pack.Writer writer : new Pack.Writer[] {blobWriter, commitWriter}) {
+            if (writer != null && writer.size() > 0) {
+                writer.finish();
+            } else if (writer != null) {
+                writer.abort();
+            }
+        }
+        blobWriter = null;
+        commitWriter = null;
+        batchCommits.clear();
+        repository.forgetPacks();
+    }
+
+    /* Discards the packs of the current batch. */
+    private void abortBatch() throws IOException {
+        for (Pack.Writer writer : new Pack.Writer[] {blobWriter, commitWriter}) {
+            if (writer != null) {
+                writer.abort();
+            }
+        }
+        blobWriter = null;
+        commitWriter = null;
+    }
+
+    /* The next SIZE bytes of the stream being imported, which is not closed. */
+    private class Data extends InputStream {
+        private long remaining;
+
+        Data(long size) {
+            remaining = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int n = input.read(buffer, offset, (int) Math.min(length, remaining));
+            if (n < 0) {
+                throw malformed("The stream ended within data");
+            }
+            remaining -= n;
+            return n;
+        }
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,251 @@
+package gitplit;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+
+/* Generates a synthetic GitPlit repository in CWD from a declarative profile.
+ * Commits are written directly through the Repository and Commit APIs, without running Main once per change. */
+public class Generator {
+
+    /* Words used to build the lines of generated files. */
+    private static final String[] WORDS = {"alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf",
+                                           "hotel", "india", "juliet", "kilo", "lima", "mike", "november",
+                                           "oscar", "papa", "quebec", "romeo", "sierra", "tango"};
+    /* Format of the commit time, identical to the one produced by Utils.getCurrentTime(). */
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+
+    /* Number of commits to generate, excluding the initial commit. At least 1, the commit creating the files. */
+    private final int commits;
+    /* Number of files created by the first generated commit. */
+    private final int files;
+    /* Size distribution of the generated files: "uniform" or "exponential". */
+    private final String sizeDistribution;
+    /* Mean and maximum size of the generated files in bytes. */
+    private final int meanSize;
+    private final int maxSize;
+    /* Fraction of the tracked files modified by each commit. */
+    private final double churn;
+    /* Fraction of the tracked files added and removed by each commit. */
+    private final double addRate;
+    private final double removeRate;
+    /* Probability that a commit starts a new branch, and that it merges another branch. */
+    private final double branchRate;
+    private final double mergeRate;
+    /* Maximum number of branches, including master. */
+    private final int maxBranches;
+    /* Whether the files of the head commit are written in CWD at the end. */
+    private final boolean checkout;
+
+    /* Random generator seeded by the profile. Same seed and profile produce the same files and history shape. */
+    private final Random random;
+    /* Names of all files tracked by the current branch, kept in sync with its head commit. */
+    private final HashMap<String, ArrayList<String>> trackedNames = new HashMap<>();
+    /* Number used to name the next new file. */
+    private int nextFileNumber = 0;
+    /* Synthetic commit time, advanced for every commit. */
+    private LocalDateTime time = LocalDateTime.of(2020, 1, 1, 0, 0, 0);
+    /* Repository of CWD, opened by generate(). */
+    private Repository repository;
+
+    /* Usage: java gitplit.Generator [ProfilePath] [Scale]
+     * SCALE is an optional factor applied to both the commit count and the file count of the profile. */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || args.length > 2) {
+            System.out.println("Usage: java gitplit.Generator [ProfilePath] [Scale]");
+            return;
+        }
+        File profile = new File(args[0]);
+        if (!profile.exists()) {
+            System.out.println("Profile does not exist.");
+            return;
+        }
+        double scale = args.length == 2 ? Double.parseDouble(args[1]) : 1;
+        new Generator(loadProfile(profile), scale).generate();
+    }
+
+    /* Reads the profile PROFILE written in the java properties format. */
+    static Properties loadProfile(File profile) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream source = new FileInputStream(profile)) {
+            properties.load(source);
+        }
+        return properties;
+    }
+
+    public Generator(Properties profile, double scale) {
+        commits = (int) Math.round(Integer.parseInt(profile.getProperty("commits", "100")) * scale);
+        files = Math.max(1, (int) Math.round(Integer.parseInt(profile.getProperty("files", "100")) * scale));
+        sizeDistribution = profile.getProperty("size.distribution", "exponential");
+        meanSize = Integer.parseInt(profile.getProperty("size.mean", "2048"));
+        maxSize = Integer.parseInt(profile.getProperty("size.max", "65536"));
+        churn = Double.parseDouble(profile.getProperty("churn", "0.02"));
+        addRate = Double.parseDouble(profile.getProperty("add.rate", "0.005"));
+        removeRate = Double.parseDouble(profile.getProperty("remove.rate", "0.002"));
+        branchRate = Double.parseDouble(profile.getProperty("branch.rate", "0.05"));
+        mergeRate = Double.parseDouble(profile.getProperty("merge.rate", "0.05"));
+        maxBranches = Integer.parseInt(profile.getProperty("branch.max", "8"));
+        checkout = Boolean.parseBoolean(profile.getProperty("checkout", "true"));
+        random = new Random(Long.parseLong(profile.getProperty("seed", "1")));
+        if (commits < 1) {
+            throw new IllegalArgumentException("Commit count must be at least 1.");
+        } else if (!sizeDistribution.equals("uniform") && !sizeDistribution.equals("exponential")) {
+            throw new IllegalArgumentException("Size distribution must be either uniform or exponential.");
+        }
+    }
+
+    /* Generates the repository. Initializes one first if CWD does not have a repository yet.
+     * The first generated commit creates all FILES files, the following ones modify, add and remove files,
+       create branches and merge them according to the profile. */
+    public void generate() throws IOException {
+        File cwd = new File(".");
+        repository = Repository.exists(cwd) ? Repository.open(cwd) : Repository.init(cwd);
+        String currentBranch = Utils.readAsString(repository.CURRENT_BRANCH);
+        trackedNames.put(currentBranch, new ArrayList<>(repository.headCommit().trackingFiles().keySet()));
+
+        for (int i = 0; i < files; i++) {
+            stageNewFile(currentBranch);
+        }
+        commit("generated " + files + " files");
+
+        int made = 1;
+        while (made < commits) {
+            currentBranch = Utils.readAsString(repository.CURRENT_BRANCH);
+            double roll = random.nextDouble();
+            if (roll < branchRate && trackedNames.size() < maxBranches) {
+                String branchName = "branch-" + made;
+                repository.addBranch(branchName);
+                repository.updateBranch(branchName);
+                trackedNames.put(branchName, new ArrayList<>(trackedNames.get(currentBranch)));
+                switchBranch(branchName);
+                continue;
+            } else if (roll < branchRate + mergeRate && trackedNames.size() > 1) {
+                if (merge(currentBranch, otherBranch(currentBranch))) {
+                    made++;
+                }
+                continue;
+            }
+            if (random.nextDouble() < 0.1 && trackedNames.size() > 1) {
+                currentBranch = otherBranch(currentBranch);
+                switchBranch(currentBranch);
+            }
+            stageChanges(currentBranch);
+            commit("generated commit " + made);
+            made++;
+        }
+
+        if (checkout) {
+            for (Map.Entry<String, String> ent : repository.headCommit().trackingFiles().entrySet()) {
+                File fileInCWD = Utils.subFile(repository.CWD, ent.getKey());
+                fileInCWD.createNewFile();
+                repository.copyBlob(ent.getValue(), fileInCWD);
+            }
+        }
+        System.out.println("Generated " + commits + " commits and " + nextFileNumber + " files.");
+    }
+
+    /* Points HEAD and the current branch at BRANCHNAME without touching the working directory. */
+    private void switchBranch(String branchName) {
+        repository.updateHead(Utils.readAsString(Utils.subFile(repository.BRANCHES, branchName)));
+        repository.updateCurrentBranch(branchName);
+    }
+
+    /* Returns a randomly chosen branch other than CURRENTBRANCH. */
+    private String otherBranch(String currentBranch) {
+        ArrayList<String> candidates = new ArrayList<>(trackedNames.keySet());
+        candidates.remove(currentBranch);
+        Collections.sort(candidates);
+        return candidates.get(random.nextInt(candidates.size()));
+    }
+
+    /* Stages modifications, additions and removals of files tracked by BRANCHNAME. */
+    private void stageChanges(String branchName) throws IOException {
+        ArrayList<String> names = trackedNames.get(branchName);
+        int modified = Math.max(1, (int) Math.round(names.size() * churn));
+        for (int i = 0; i < modified && !names.isEmpty(); i++) {
+            stageFile(names.get(random.nextInt(names.size())));
+        }
+        for (int i = 0; i < Math.round(names.size() * addRate); i++) {
+            stageNewFile(branchName);
+        }
+        for (int i = 0; i < Math.round(names.size() * removeRate) && names.size() > 1; i++) {
+            String removed = names.remove(random.nextInt(names.size()));
+            Utils.subFile(repository.ADDITIONS, removed).delete();
+            Utils.subFile(repository.REMOVALS, removed).createNewFile();
+        }
+    }
+
+    /* Merges the branch OTHERBRANCH into CURRENTBRANCH, taking the version of OTHERBRANCH for the files
+       they do not agree on. Files only tracked by OTHERBRANCH are added as well.
+     * Returns false without committing if both branches point at the same commit. */
+    private boolean merge(String currentBranch, String otherBranch) throws IOException {
+        String otherID = Utils.readAsString(Utils.subFile(repository.BRANCHES, otherBranch));
+        if (otherID.equals(Utils.readAsString(repository.HEAD_COMMIT))) {
+            return false;
+        }
+        HashMap<String, String> ours = repository.headCommit().trackingFiles();
+        HashMap<String, String> theirs = repository.readCommit(otherID).trackingFiles();
+        ArrayList<String> names = trackedNames.get(currentBranch);
+        for (Map.Entry<String, String> ent : theirs.entrySet()) {
+            String ourBlobID = ours.get(ent.getKey());
+            if (ourBlobID == null) {
+                names.add(ent.getKey());
+            }
+            if (!ent.getValue().equals(ourBlobID)) {
+                repository.copyBlob(ent.getValue(), Utils.subFile(repository.ADDITIONS, ent.getKey()));
+            }
+        }
+        String message = "Merged " + otherBranch + " into " + currentBranch + ".";
+        repository.addCommit(new Commit(message, nextTime(), repository), otherID);
+        return true;
+    }
+
+    /* Creates a commit with MESSAGE out of the staged files. */
+    private void commit(String message) throws IOException {
+        repository.addCommit(new Commit(message, nextTime(), repository));
+    }
+
+    /* Stages a new file for addition to BRANCHNAME. */
+    private void stageNewFile(String branchName) {
+        String name = String.format("file%06d.txt", nextFileNumber++);
+        trackedNames.get(branchName).add(name);
+        stageFile(name);
+    }
+
+    /* Stages new random contents for the file NAME. */
+    private void stageFile(String name) {
+        Utils.writeContents(Utils.subFile(repository.ADDITIONS, name), randomContents());
+    }
+
+    /* Returns random text lines whose total size follows the size distribution of the profile. */
+    private byte[] randomContents() {
+        int size;
+        if (sizeDistribution.equals("uniform")) {
+            size = random.nextInt(2 * meanSize + 1);
+        } else {
+            size = (int) (-meanSize * Math.log(1 - random.nextDouble()));
+        }
+        size = Math.min(size, maxSize);
+        StringBuilder contents = new StringBuilder(size + 16);
+        while (contents.length() < size) {
+            int wordsInLine = 1 + random.nextInt(8);
+            for (int i = 0; i < wordsInLine; i++) {
+                contents.append(WORDS[random.nextInt(WORDS.length)]).append(i + 1 < wordsInLine ? ' ' : '\n');
+            }
+        }
+        return contents.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /* Returns the time of the next commit. Commits are spaced by one to sixty minutes. */
+    private String nextTime() {
+        time = time.plusMinutes(1 + random.nextInt(60));
+        return TIME_FORMAT.format(time);
+    }
+
+}
\ No newline at end of file
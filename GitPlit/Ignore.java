@@ -0,0 +1,81 @@
+package gitplit;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.regex.Pattern;
+
+
+/* The untracked files of a working directory that status and the checks for untracked files leave out, chosen by the
+   patterns of its .gitplitignore file.
+ * The file holds one pattern per line, matched against the names of the entries of the working directory, files and
+   directories alike: * matches any run of characters and ? any one character. An entry is ignored if it matches a
+   pattern and no pattern starting with !. Blank lines and lines starting with # are skipped.
+ * Only the top of the working directory is tracked, so a leading / or ** followed by / and a trailing / are
+   dropped, which lets patterns such as target/ or /node_modules work as in git. Patterns naming files inside a
+   directory can never match and are skipped.
+ * Patterns are compiled once: plain names are looked up in a set, and the others are joined into one regex. Entries
+   are matched by name alone, so that ignored ones, such as directories of build outputs, are never looked at. */
+class Ignore {
+
+    static final String FILE_NAME = ".gitplitignore";
+    /* Ignores nothing, for working directories without a .gitplitignore file. */
+    static final Ignore NONE = new Ignore(new ArrayList<>());
+
+    private final HashSet<String> ignoredNames = new HashSet<>();
+    private final HashSet<String> keptNames = new HashSet<>();
+    private final Pattern ignored;
+    private final Pattern kept;
+
+    /* Compiles PATTERNS. */
+    Ignore(ArrayList<String> patterns) {
+        ArrayList<String> ignoredGlobs = new ArrayList<>();
+        ArrayList<String> keptGlobs = new ArrayList<>();
+        for (String pattern : patterns) {
+            boolean negated = pattern.startsWith("!");
+            String glob = negated ? pattern.substring(1) : pattern;
+            while (glob.startsWith("**/")) {
+                glob = glob.substring(3);
+            }
+            if (glob.startsWith("/")) {
+                glob = glob.substring(1);
+            }
+            if (glob.endsWith("/")) {
+                glob = glob.substring(0, glob.length() - 1);
+            }
+            if (glob.isEmpty() || glob.contains("/") || glob.contains("\\")) {
+                continue;
+            } else if (glob.indexOf('*') < 0 && glob.indexOf('?') < 0) {
+                (negated ? keptNames : ignoredNames).add(glob);
+            } else {
+                (negated ? keptGlobs : ignoredGlobs).add(SparseCheckout.regex(glob));
+            }
+        }
+        ignored = ignoredGlobs.isEmpty() ? null : Pattern.compile(String.join("|", ignoredGlobs));
+        kept = keptGlobs.isEmpty() ? null : Pattern.compile(String.join("|", keptGlobs));
+    }
+
+    /* Returns the patterns of the .gitplitignore file of the working directory DIR, or NONE if there is none. */
+    static Ignore read(File dir) {
+        File file = Utils.subFile(dir, FILE_NAME);
+        if (!Utils.isFile(file)) {
+            return NONE;
+        }
+        ArrayList<String> patterns = new ArrayList<>();
+        for (String line : Utils.readAsString(file).split("\n")) {
+            if (!line.isBlank() && !line.startsWith("#")) {
+                patterns.add(line.strip());
+            }
+        }
+        return new Ignore(patterns);
+    }
+
+    /* Returns whether the entry named NAME of the working directory is ignored, without looking at it. */
+    boolean ignores(String name) {
+        if (!ignoredNames.contains(name) && (ignored == null || !ignored.matcher(name).matches())) {
+            return false;
+        }
+        return !keptNames.contains(name) && (kept == null || !kept.matcher(name).matches());
+    }
+
+}
\ No newline at end of file
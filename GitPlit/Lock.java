@@ -0,0 +1,85 @@
+package gitplit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+
+/* An exclusive lock on one file of a GitPlit repository, such as a branch, the head commit or the staging area.
+ * The lock is held by creating <parent>@<name>.lock in the locks directory of the repository, which only one
+   process can do at a time. Locks on different files are independent, so that commands touching different branches
+   run in parallel.
+ * A locked file can be replaced through commit(): the new contents are written into the lock file, which is then
+   renamed over the locked file, so that readers see either the old or the new contents and never a partial file. */
+class Lock implements AutoCloseable {
+
+    static final String SUFFIX = ".lock";
+    /* Time to wait for a lock held by another command, in milliseconds. */
+    static final long TIMEOUT = 10000;
+
+    private final File lockFile;
+    private final File target;
+    private boolean held = true;
+
+    private Lock(File lockFile, File target) {
+        this.lockFile = lockFile;
+        this.target = target;
+    }
+
+    /* Takes the lock on TARGET, whose lock file goes in the directory LOCKS, waiting up to TIMEOUT if another
+       command holds it.
+     * Throws IllegalStateException if the lock is still held after TIMEOUT. */
+    static Lock acquire(File locks, File target) {
+        locks.mkdirs();
+        File lockFile = Utils.subFile(locks, target.getAbsoluteFile().getParentFile().getName() + "@"
+                                             + target.getName() + SUFFIX);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        long wait = 1;
+        while (true) {
+            try {
+                Files.createFile(lockFile.toPath());
+                return new Lock(lockFile, target);
+            } catch (FileAlreadyExistsException exc) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Unable to lock " + target.getPath() + ": another GitPlit "
+                                                    + "command is using it. If none is running, delete "
+                                                    + lockFile.getPath() + ".");
+                }
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for " + lockFile.getPath() + ".");
+                }
+                wait = Math.min(wait * 2, 50);
+            } catch (IOException exc) {
+                throw new IllegalArgumentException(exc.getMessage());
+            }
+        }
+    }
+
+    /* Replaces the locked file with CONTENTS and releases the lock. */
+    void commit(String contents) {
+        try {
+            Files.write(lockFile.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+            Files.move(lockFile.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+            held = false;
+        } catch (IOException exc) {
+            throw new IllegalArgumentException(exc.getMessage());
+        }
+    }
+
+    /* Releases the lock if commit() did not. */
+    @Override
+    public void close() {
+        if (held) {
+            lockFile.delete();
+            held = false;
+        }
+    }
+
+}
\ No newline at end of file
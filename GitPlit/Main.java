@@ -1,5 +1,6 @@
 package gitplit;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 
@@ -7,52 +8,85 @@ import java.util.*;
 /* Executing GitPlit, a version control system that reproduces the features of Git. */
 public class Main {
     
-    /* Usage: java gitplit.Main <COMMAND> <OPERAND>... */
+    /* Usage: java gitplit.Main [--perf] <COMMAND> <OPERAND>...
+     * With --perf, a summary of the time spent per phase is printed to stderr at command exit. */
     public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--perf")) {
+            Perf.enable();
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        
+        Perf.CommandEvent event = new Perf.CommandEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            run(args);
+        } catch (IllegalStateException exc) {
+            System.out.println(exc.getMessage());
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.command = String.join(" ", args);
+                event.commit();
+            }
+            if (Perf.isEnabled()) {
+                Perf.printSummary(System.err, String.join(" ", args), System.nanoTime() - start);
+            }
+        }
+    }
+    
+    /* Executes COMMAND with its OPERANDs given in ARGS on the repository of CWD. */
+    private static void run(String[] args) throws IOException {
         
         /* COMMAND must be specified. */
         if (args.length == 0) {
             System.out.println("Please enter a command.");
             return;
         }
-        /* No COMMAND can be executed without Base.GITPLIT - the root storage. */
-        if (!args[0].equals("init") && !Base.GITPLIT.exists()) {
+        File cwd = new File(".");
+        if (args[0].equals("init")) {
+            Repository.init(cwd);
+            return;
+        }
+        /* No other COMMAND can be executed without a repository - the root storage. */
+        if (!Repository.exists(cwd)) {
             System.out.println("Need an initialized GitPlit repository. Try 'java gitplit.Main init'.");
             return;
         }
+        execute(Repository.open(cwd), args);
+    }
+    
+    /* Helper function of run(). */
+    private static void execute(Repository repository, String[] args) throws IOException {
         
         /* Executing COMMAND. */
         switch (args[0]) {
-            case "init":
-                Base.setUp();
-                return;
             case "add":
-                Base.updateAdditions(args[1]);
+                repository.updateAdditions(args[1]);
                 return;
             case "commit":
-                if (args.length == 1 || args[1].length() == 0) {
-                    System.out.println("Please enter a commit message.");
-                    return;
-                } else if (Base.ADDITIONS.listFiles().length == 0 && Base.REMOVALS.listFiles().length == 0) {
-                    System.out.println("No changes added to the commit.");
-                    return;
-                }
-                Base.addCommit(new Commit(Utils.restOfArgs(args, 1), Utils.getCurrentTime()));
+                repository.commit(args.length == 1 ? "" : Utils.restOfArgs(args, 1));
                 return;
             case "log":
-                Base.log();
+                if (args.length == 1) {
+                    printLog(repository.log());
+                } else if (args.length == 3 && args[1].equals("--")) {
+                    printLog(repository.log(args[2]));
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
                 return;
             case "checkout":
                 switch (args.length) {
                     case 2:
-                        Base.checkoutBranch(args[1]);
+                        repository.checkoutBranch(args[1]);
                         return;
                     case 3:
                         if (!args[1].equals("--")) {
                             System.out.println("Incorrect operands.");
                             return;
                         }
-                        Base.checkoutFile(args[2]);
+                        repository.checkoutFile(args[2]);
                         return;
                     case 4: 
                         try { 
@@ -60,7 +94,7 @@ public class Main {
                                 System.out.println("Incorrect operands.");
                                 return;
                             }
-                            Base.checkoutFile(args[3], Base.fullCommitID(args[1]));
+                            repository.checkoutFile(args[3], repository.fullCommitID(args[1]));
                             return;
                         } catch (IllegalArgumentException exc) {
                             System.out.println("The length of abbreviated commit ID must be at least 6.");
@@ -71,26 +105,32 @@ public class Main {
                         return;
                 }
             case "rm":
-                Base.updateRemovals(args[1]);
+                repository.updateRemovals(args[1]);
                 return;
             case "find":
-                Base.find(Utils.restOfArgs(args, 1));
+                ArrayList<String> found = repository.find(Utils.restOfArgs(args, 1));
+                if (found.isEmpty()) {
+                    System.out.println("Found no commit with that message.");
+                }
+                for (String commitID : found) {
+                    System.out.println(commitID);
+                }
                 return;
             case "status":
-                Base.status();
+                printStatus(repository.status());
                 return;
             case "branch":
                 switch (args.length) {
                     case 2:
-                        Base.addBranch(args[1]);
-                        Base.updateBranch(args[1]);
+                        repository.addBranch(args[1]);
+                        repository.updateBranch(args[1]);
                         return;
                     case 3:
                         if (!args[1].equals("-d")) {
                             System.out.println("No such command exists.");
                             return;
                         }
-                        Base.removeBranch(args[2]);
+                        repository.removeBranch(args[2]);
                         return;
                     default: 
                         System.out.println("Invalid number of arguments.");
@@ -98,31 +138,313 @@ public class Main {
                 }
             case "reset":
                 try {
-                    Base.reset(Base.fullCommitID(args[1]));
+                    if (args.length == 3) {
+                        repository.reset(repository.fullCommitID(args[2]), args[1]);
+                    } else {
+                        repository.reset(repository.fullCommitID(args[1]));
+                    }
                     return;
                 } catch (IllegalArgumentException exc) {
                     System.out.println("The length of abbreviated commit ID must be at least 6.");
                     return;
                 }
             case "merge":
-                Base.merge(args[1]);
+                Repository.MergeResult merged = repository.merge(args[1]);
+                if (merged.commitID == null && merged.fastForward) {
+                    System.out.println("Current branch fast-forwarded.");
+                } else if (merged.commitID == null) {
+                    System.out.println("Provided branch is an ancestor of the current branch.");
+                } else if (!merged.conflicts.isEmpty()) {
+                    System.out.println("Encountered a merge conflict.");
+                }
+                return;
+            case "cherry-pick":
+                if (args.length != 2) {
+                    System.out.println("Invalid number of arguments.");
+                    return;
+                }
+                String pickedID;
+                try {
+                    pickedID = repository.fullCommitID(args[1]);
+                } catch (IllegalArgumentException exc) {
+                    System.out.println("The length of abbreviated commit ID must be at least 6.");
+                    return;
+                }
+                if (!repository.cherryPick(pickedID).conflicts.isEmpty()) {
+                    System.out.println("Encountered a merge conflict.");
+                }
+                return;
+            case "rebase":
+                if (args.length != 2) {
+                    System.out.println("Invalid number of arguments.");
+                    return;
+                }
+                Repository.ReplayResult rebased = repository.rebase(args[1]);
+                if (rebased.commitID == null) {
+                    System.out.println("Current branch is up to date.");
+                    return;
+                }
+                if (rebased.commits == 0 && rebased.dropped > 0) {
+                    System.out.println("All commits were already upstream; current branch moved to " + args[1] + ".");
+                    return;
+                } else if (rebased.commits == 0) {
+                    System.out.println("Current branch fast-forwarded.");
+                    return;
+                }
+                System.out.println("Replayed " + rebased.commits + " commits onto " + args[1] + ".");
+                if (!rebased.conflicts.isEmpty()) {
+                    System.out.println("Encountered a merge conflict.");
+                }
+                return;
+            case "gc":
+                boolean full = false;
+                int graceDays = Repository.GC_GRACE_DAYS;
+                for (int i = 1; i < args.length; i++) {
+                    if (args[i].equals("--full")) {
+                        full = true;
+                    } else if (args[i].startsWith("--prune=")) {
+                        try {
+                            graceDays = Integer.parseInt(args[i].substring("--prune=".length()));
+                        } catch (NumberFormatException exc) {
+                            System.out.println("The grace period must be a number of days.");
+                            return;
+                        }
+                    } else {
+                        System.out.println("Incorrect operands.");
+                        return;
+                    }
+                }
+                Repository.GcResult collected = repository.gc(full, graceDays);
+                System.out.println("Packed " + collected.packed + " objects, pruned " + collected.pruned 
+                                   + " unreachable objects.");
                 return;
             case "clone":
+                int depth = 0;
+                boolean partial = false;
+                ArrayList<String> paths = new ArrayList<>();
+                for (int i = 1; i < args.length; i++) {
+                    if (args[i].equals("--partial")) {
+                        partial = true;
+                    } else if (args[i].equals("--depth") && i + 1 < args.length) {
+                        try {
+                            depth = Integer.parseInt(args[++i]);
+                        } catch (NumberFormatException exc) {
+                            depth = -1;
+                        }
+                        if (depth < 1) {
+                            System.out.println("The depth must be a positive number of commits.");
+                            return;
+                        }
+                    } else {
+                        paths.add(args[i]);
+                    }
+                }
+                if (paths.size() == 0 || paths.size() > 2) {
+                    System.out.println("Invalid number of arguments.");
+                    return;
+                }
+                File dir = new File(paths.get(paths.size() - 1));
+                Repository source = repository;
+                if (paths.size() == 2 || depth > 0 || partial) {
+                    File repo = new File(paths.size() == 2 ? paths.get(0) : ".");
+                    if (!repo.exists() || !dir.exists()) {
+                        System.out.println("Invalid paths.");
+                        return;
+                    }
+                    source = Repository.open(repo);
+                }
+                if (depth > 0 || partial) {
+                    source.cloneInto(dir, depth, partial);
+                } else {
+                    source.cloneInto(dir);
+                }
+                return;
+            case "blame":
                 switch (args.length) {
                     case 2:
-                        Base.clone(args[1]);
-                        return;
-                    case 3:
-                        Base.clone(args[1], args[2]);
+                        repository.blame(args[1], System.out);
                         return;
-                    default: 
+                    case 4:
+                        try {
+                            if (!args[2].equals("--")) {
+                                System.out.println("Incorrect operands.");
+                                return;
+                            }
+                            repository.blame(args[3], repository.fullCommitID(args[1]), System.out);
+                            return;
+                        } catch (IllegalArgumentException exc) {
+                            System.out.println("The length of abbreviated commit ID must be at least 6.");
+                            return;
+                        }
+                    default:
                         System.out.println("Invalid number of arguments.");
                         return;
                 }
+            case "diff":
+                try {
+                    switch (args.length) {
+                        case 1:
+                            repository.diff(System.out);
+                            return;
+                        case 2:
+                            if (args[1].equals("--cached")) {
+                                repository.diffCached(System.out);
+                            } else {
+                                repository.diff(repository.fullCommitID(args[1]), System.out);
+                            }
+                            return;
+                        case 3:
+                            repository.diff(repository.fullCommitID(args[1]), repository.fullCommitID(args[2]), 
+                                            System.out);
+                            return;
+                        default:
+                            System.out.println("Invalid number of arguments.");
+                            return;
+                    }
+                } catch (IllegalArgumentException exc) {
+                    System.out.println("The length of abbreviated commit ID must be at least 6.");
+                    return;
+                }
+            case "fetch":
+                if (args.length != 3 && args.length != 4) {
+                    System.out.println("Invalid number of arguments.");
+                    return;
+                }
+                Repository.TransferResult fetched = repository.fetch(Repository.open(new File(args[1])), args[2], 
+                                                                     args.length == 4 ? args[3] : args[2]);
+                printTransfer(fetched);
+                return;
+            case "push":
+                if (args.length != 3 && args.length != 4) {
+                    System.out.println("Invalid number of arguments.");
+                    return;
+                }
+                Repository.TransferResult pushed = repository.push(Repository.open(new File(args[1])), args[2], 
+                                                                   args.length == 4 ? args[3] : args[2]);
+                printTransfer(pushed);
+                return;
+            case "fast-import":
+                if (args.length != 1) {
+                    System.out.println("Incorrect operands.");
+                    return;
+                }
+                Repository.ImportResult imported = repository.fastImport(System.in);
+                System.out.println("Imported " + imported.commits + " commits and " + imported.blobs + " blobs.");
+                for (Map.Entry<String, String> ent : imported.branches.entrySet()) {
+                    System.out.println(ent.getKey() + " -> " + ent.getValue());
+                }
+                return;
+            case "sparse-checkout":
+                if (args.length >= 2 && args[1].equals("set")) {
+                    repository.setSparseCheckout(Arrays.asList(args).subList(2, args.length));
+                } else if (args.length == 2 && args[1].equals("disable")) {
+                    repository.setSparseCheckout(null);
+                } else if (args.length == 2 && args[1].equals("list")) {
+                    List<String> patterns = repository.sparseCheckoutPatterns();
+                    if (patterns == null) {
+                        System.out.println("Sparse checkout is disabled.");
+                    }
+                    for (String pattern : patterns == null ? new ArrayList<String>() : patterns) {
+                        System.out.println(pattern);
+                    }
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
+                return;
+            case "worktree":
+                if (args.length == 2 && args[1].equals("list")) {
+                    for (Map.Entry<File, String> ent : repository.listWorktrees().entrySet()) {
+                        System.out.println(ent.getKey().getPath() + " [" + ent.getValue() + "]");
+                    }
+                } else if (args.length == 4 && args[1].equals("add")) {
+                    repository.addWorktree(new File(args[2]), args[3]);
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
+                return;
             default:
                 System.out.println("No command with that name exists.");
                 return;
         }
     }
     
+    /* Displays the commits of HISTORY, as returned by log(). */
+    private static void printLog(Iterator<Repository.LogEntry> history) {
+        boolean first = true;
+        while (history.hasNext()) {
+            Repository.LogEntry entry = history.next();
+            if (!first) {
+                System.out.println("");
+            }
+            System.out.println("===");
+            System.out.print("commit ");
+            System.out.println(entry.commitID);
+            if (entry.commit.hasSecondParent()) {
+                System.out.println("Merge: " + entry.commit.parentID().substring(0, 6) + " " 
+                                   + entry.commit.secondParentID().substring(0, 6));
+            }
+            System.out.println("Date: " + entry.commit.time());
+            System.out.println(entry.commit.message());
+            first = false;
+        }
+    }
+    
+    /* Displays STATUS, as returned by status(). */
+    private static void printStatus(Repository.Status status) {
+        System.out.println("=== Branches ===");
+        for (String branchName : status.branches) {
+            if (branchName.equals(status.currentBranch)) {
+                System.out.println("*" + branchName);
+            } else {
+                System.out.println(branchName);
+            }
+        }
+        System.out.println("");
+        
+        System.out.println("=== Staged Files ===");
+        for (String fileName : status.staged) {
+            System.out.println(fileName + pairDescription(status, fileName));
+        }
+        System.out.println("");
+        
+        System.out.println("=== Removed Files ===");
+        for (String fileName : status.removed) {
+            System.out.println(fileName);
+        }
+        System.out.println("");
+        
+        System.out.println("=== Modifications Not Staged For Commit ===");
+        for (Map.Entry<String, String> ent : status.modifications.entrySet()) {
+            System.out.println(ent.getKey() + " (" + ent.getValue() + ")");
+        }
+        System.out.println("");
+        
+        System.out.println("=== Untracked Files ===");
+        for (String fileName : status.untracked) {
+            System.out.println(fileName + pairDescription(status, fileName));
+        }
+    }
+    
+    /* Helper function of printStatus().
+     * Returns how the file named FILENAME was detected as renamed or copied in STATUS, to be printed after its name,
+       or "" if it was not. */
+    private static String pairDescription(Repository.Status status, String fileName) {
+        if (status.renamedFrom.containsKey(fileName)) {
+            return " (renamed from " + status.renamedFrom.get(fileName) + ")";
+        } else if (status.copiedFrom.containsKey(fileName)) {
+            return " (copied from " + status.copiedFrom.get(fileName) + ")";
+        }
+        return "";
+    }
+    
+    /* Displays what fetch() or push() TRANSFERRED. */
+    private static void printTransfer(Repository.TransferResult transferred) {
+        if (transferred == null) {
+            System.out.println("Already up to date.");
+            return;
+        }
+        System.out.println("Transferred " + transferred.commits + " commits and " + transferred.blobs + " blobs (" 
+                           + transferred.bytes + " bytes).");
+    }
+    
 }
\ No newline at end of file
@@ -0,0 +1,174 @@
+package gitplit;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+
+/* The SHA-3 ID of a commit or blob, held as the four big-endian longs of its 32 bytes.
+ * Walks, indexes and caches keep IDs in this form, so that comparing and hashing them costs a few long operations
+   instead of going through 64-character Strings. Hex only appears where an ID leaves the program: file names,
+   printed output, commit files and the Repository API. */
+final class ObjectId implements Comparable<ObjectId> {
+
+    /* Length of an ID in bytes and in hexadecimal digits. */
+    static final int SIZE = 32;
+    static final int HEX_LENGTH = 2 * SIZE;
+
+    private final long w0;
+    private final long w1;
+    private final long w2;
+    private final long w3;
+
+    private ObjectId(long w0, long w1, long w2, long w3) {
+        this.w0 = w0;
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+    }
+
+    /* Returns the ID written as the 64 hexadecimal digits HEX, or null if HEX is null.
+     * Throws IllegalArgumentException if HEX is not 64 hexadecimal digits. */
+    static ObjectId fromHex(String hex) {
+        if (hex == null) {
+            return null;
+        }
+        ObjectId id = parse(hex);
+        if (id == null) {
+            throw new IllegalArgumentException(hex + " is not an object ID.");
+        }
+        return id;
+    }
+
+    /* Returns the ID written as the 64 hexadecimal digits HEX, or null if HEX is null or anything else, such as the
+       name of a temporary file. */
+    static ObjectId parse(String hex) {
+        if (hex == null || hex.length() != HEX_LENGTH) {
+            return null;
+        }
+        long[] words = new long[4];
+        for (int i = 0; i < HEX_LENGTH; i++) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0) {
+                return null;
+            }
+            words[i / 16] = words[i / 16] << 4 | digit;
+        }
+        return new ObjectId(words[0], words[1], words[2], words[3]);
+    }
+
+    /* Returns the ID stored as 32 raw bytes in BYTES from OFFSET on. */
+    static ObjectId fromBytes(byte[] bytes, int offset) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, SIZE);
+        return new ObjectId(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+    }
+
+    /* Returns the ID stored as 32 raw bytes in BUFFER at the absolute position OFFSET. */
+    static ObjectId read(ByteBuffer buffer, int offset) {
+        return new ObjectId(buffer.getLong(offset), buffer.getLong(offset + 8), buffer.getLong(offset + 16),
+                            buffer.getLong(offset + 24));
+    }
+
+    /* Returns the lowest ID starting with the hexadecimal digits PREFIX, which are padded with zeros, or null if
+       PREFIX is longer than an ID or not made of hexadecimal digits. */
+    static ObjectId lowest(String prefix) {
+        if (prefix.length() > HEX_LENGTH) {
+            return null;
+        }
+        return parse(prefix + "0".repeat(HEX_LENGTH - prefix.length()));
+    }
+
+    /* Writes the 32 raw bytes of this ID into OUTPUT. */
+    void write(DataOutput output) throws IOException {
+        output.writeLong(w0);
+        output.writeLong(w1);
+        output.writeLong(w2);
+        output.writeLong(w3);
+    }
+
+    /* Returns the 32 raw bytes of this ID. */
+    byte[] toBytes() {
+        return ByteBuffer.allocate(SIZE).putLong(w0).putLong(w1).putLong(w2).putLong(w3).array();
+    }
+
+    /* Returns the first byte of this ID, from 0 to 255, which indexes the fan-out table of packs. */
+    int firstByte() {
+        return (int) (w0 >>> 56);
+    }
+
+    /* Compares this ID with the one stored as 32 raw bytes in BUFFER at the absolute position OFFSET, as unsigned
+       bytes, without reading it into an ObjectId. */
+    int compareTo(ByteBuffer buffer, int offset) {
+        int cmp = Long.compareUnsigned(w0, buffer.getLong(offset));
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(w1, buffer.getLong(offset + 8));
+        }
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(w2, buffer.getLong(offset + 16));
+        }
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(w3, buffer.getLong(offset + 24));
+        }
+        return cmp;
+    }
+
+    /* Returns whether this ID and OTHER have the same first DIGITS hexadecimal digits. */
+    boolean startsWith(ObjectId other, int digits) {
+        long[] mine = {w0, w1, w2, w3};
+        long[] theirs = {other.w0, other.w1, other.w2, other.w3};
+        for (int i = 0; digits > 0; i++, digits -= 16) {
+            long mask = digits >= 16 ? -1L : -1L << (64 - 4 * digits);
+            if (((mine[i] ^ theirs[i]) & mask) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Returns the 64 hexadecimal digits of this ID, as Utils.sha3() writes them. */
+    String toHex() {
+        char[] hex = new char[HEX_LENGTH];
+        long[] words = {w0, w1, w2, w3};
+        for (int i = 0; i < HEX_LENGTH; i++) {
+            hex[i] = Character.forDigit((int) (words[i / 16] >>> (60 - 4 * (i % 16))) & 0xf, 16);
+        }
+        return new String(hex);
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    /* Orders IDs as unsigned bytes, the order of pack indexes. */
+    @Override
+    public int compareTo(ObjectId other) {
+        int cmp = Long.compareUnsigned(w0, other.w0);
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(w1, other.w1);
+        }
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(w2, other.w2);
+        }
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(w3, other.w3);
+        }
+        return cmp;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId id = (ObjectId) other;
+        return w0 == id.w0 && w1 == id.w1 && w2 == id.w2 && w3 == id.w3;
+    }
+
+    /* The bits of a SHA-3 hash are already uniformly spread, so any 32 of them make a good hash code. */
+    @Override
+    public int hashCode() {
+        return (int) w3;
+    }
+
+}
\ No newline at end of file
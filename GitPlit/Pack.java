@@ -0,0 +1,412 @@
+package gitplit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+
+/* A pack of objects consolidated by gc() or received by fetch() and push(), stored as two files in Repository.PACKS:
+ * 1. pack-<hash>.pack holds the compressed objects back to back.
+ * 2. pack-<hash>.idx maps the ID of each object to its location in the data file.
+ *    Header: magic, version, flags, object count, and a fan-out table of 256 cumulative counts
+ *    indexed by the first byte of the ID. Entries: 32-byte raw ID, 8-byte offset, 4-byte length, sorted by ID.
+ * Lookups binary search the memory-mapped index, so that reading a pack never loads it as a whole. */
+class Pack {
+
+    static final String DATA_SUFFIX = ".pack";
+    static final String INDEX_SUFFIX = ".idx";
+    /* Flag of packs whose commits have every ancestor and every blob in closed packs as well.
+     * Only such packs let gc() stop its incremental walk at their commits. */
+    static final int FLAG_CLOSED = 1;
+    /* Flag of packs holding blobs. Packs without it hold commits. */
+    static final int FLAG_BLOBS = 2;
+    /* Size above which gc() leaves blobs loose, so that their compressed length fits the 4-byte length of an
+       index entry. */
+    static final long MAX_OBJECT_SIZE = 1L << 30;
+
+    private static final int MAGIC = 0x47504958;
+    private static final int VERSION = 1;
+    private static final int ID_SIZE = ObjectId.SIZE;
+    private static final int ENTRY_SIZE = ID_SIZE + 8 + 4;
+    private static final int FANOUT_SIZE = 256 * 4;
+    private static final int HEADER_SIZE = 16 + FANOUT_SIZE;
+
+    /* Data file and index file of this pack. */
+    private final File data;
+    private final File index;
+    /* Memory-mapped index file. */
+    private final ByteBuffer entries;
+    private final int flags;
+    private final int count;
+
+    /* Opens the pack whose index file is INDEX.
+     * Throws IllegalArgumentException if the index file cannot be read or is not a pack index. */
+    Pack(File index) {
+        this.index = index;
+        String name = index.getName();
+        data = Utils.subFile(index.getParentFile(), name.substring(0, name.length() - INDEX_SUFFIX.length())
+                                                    + DATA_SUFFIX);
+        try (RandomAccessFile source = new RandomAccessFile(index, "r")) {
+            MappedByteBuffer mapped = source.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, source.length());
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+                throw new IllegalArgumentException(index.getPath() + " is not a pack index.");
+            }
+            flags = mapped.getInt(8);
+            count = mapped.getInt(12);
+            entries = mapped;
+        } catch (IOException exc) {
+            throw new IllegalArgumentException(exc.getMessage());
+        }
+    }
+
+    /* Returns all packs of the directory DIR, which may not exist. */
+    static ArrayList<Pack> openAll(File dir) {
+        ArrayList<Pack> packs = new ArrayList<>();
+        String[] names = Utils.list(dir);
+        if (names == null) {
+            return packs;
+        }
+        Arrays.sort(names);
+        for (String name : names) {
+            if (name.endsWith(INDEX_SUFFIX)) {
+                packs.add(new Pack(Utils.subFile(dir, name)));
+            }
+        }
+        return packs;
+    }
+
+    /* Returns the name of this pack, made from the hash of the IDs it holds. */
+    String name() {
+        String name = index.getName();
+        return name.substring(0, name.length() - INDEX_SUFFIX.length());
+    }
+
+    /* Returns the number of objects in this pack. */
+    int size() {
+        return count;
+    }
+
+    /* Returns whether this pack has the flag FLAG. */
+    boolean hasFlag(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    /* Returns the last time this pack was modified, in milliseconds. */
+    long lastModified() {
+        return index.lastModified();
+    }
+
+    /* Returns the ID of the I-th object in ID order. */
+    ObjectId idAt(int i) {
+        return ObjectId.read(entries, HEADER_SIZE + i * ENTRY_SIZE);
+    }
+
+    /* Returns whether this pack holds the object with ID. */
+    boolean contains(ObjectId id) {
+        return find(id) >= 0;
+    }
+
+    /* Returns the contents of the object with ID, or null if this pack does not hold it. */
+    byte[] read(ObjectId id) {
+        int i = find(id);
+        return i < 0 ? null : readAt(i);
+    }
+
+    /* Returns the contents of the I-th object in ID order.
+     * Throws IllegalArgumentException if the data file cannot be read. */
+    byte[] readAt(int i) {
+        int entry = HEADER_SIZE + i * ENTRY_SIZE;
+        long offset = entries.getLong(entry + ID_SIZE);
+        byte[] compressed = new byte[entries.getInt(entry + ID_SIZE + 8)];
+        try (RandomAccessFile source = new RandomAccessFile(data, "r")) {
+            Perf.PhaseEvent event = Perf.begin(Perf.Phase.READ);
+            source.seek(offset);
+            source.readFully(compressed);
+            Perf.end(event, data, compressed.length);
+        } catch (IOException exc) {
+            throw new IllegalArgumentException(exc.getMessage());
+        }
+        try (InflaterInputStream inflater = new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+            return inflater.readAllBytes();
+        } catch (IOException exc) {
+            throw new IllegalArgumentException(exc.getMessage());
+        }
+    }
+
+    /* Returns a stream of the contents of the object with ID, or null if this pack does not hold it. */
+    InputStream open(ObjectId id) {
+        int i = find(id);
+        return i < 0 ? null : openAt(i);
+    }
+
+    /* Returns a stream of the contents of the I-th object in ID order.
+     * The object is read from the data file and inflated chunk by chunk as the stream is read, so that it is never
+       held in memory as a whole. The stream must be closed.
+     * Throws IllegalArgumentException if the data file cannot be opened. */
+    InputStream openAt(int i) {
+        int entry = HEADER_SIZE + i * ENTRY_SIZE;
+        long offset = entries.getLong(entry + ID_SIZE);
+        try {
+            FileChannel channel = FileChannel.open(data.toPath(), StandardOpenOption.READ);
+            channel.position(offset);
+            return new InflaterInputStream(new BufferedInputStream(Channels.newInputStream(channel), 
+                                                                   Utils.BUFFER_SIZE));
+        } catch (IOException exc) {
+            throw new IllegalArgumentException(exc.getMessage());
+        }
+    }
+
+    /* Returns the full ID of the first object in ID order whose ID starts with the hexadecimal digits PREFIX, or
+       null if there is none. */
+    ObjectId findPrefix(String prefix) {
+        ObjectId lowest = ObjectId.lowest(prefix);
+        if (lowest == null) {
+            return null;
+        }
+        int i = find(lowest);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        if (i < count) {
+            ObjectId id = idAt(i);
+            if (id.startsWith(lowest, prefix.length())) {
+                return id;
+            }
+        }
+        return null;
+    }
+
+    /* Returns the position of ID in the index, or (-insertion point - 1) if this pack does not hold it. */
+    private int find(ObjectId id) {
+        int first = id.firstByte();
+        int low = first == 0 ? 0 : entries.getInt(16 + (first - 1) * 4);
+        int high = entries.getInt(16 + first * 4) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = id.compareTo(entries, HEADER_SIZE + mid * ENTRY_SIZE);
+            if (cmp > 0) {
+                low = mid + 1;
+            } else if (cmp < 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -low - 1;
+    }
+
+    /* Returns CONTENTS compressed the way packs store objects. */
+    static byte[] compress(byte[] contents) throws IOException {
+        Deflater deflater = new Deflater();
+        try {
+            return compress(contents, deflater);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /* Helper function of compress() and Writer.add().
+     * Compresses CONTENTS with DEFLATER, which is reset first so that one deflater serves many objects. Setting up
+       a deflater costs more than compressing most commits, so writers keep theirs. */
+    private static byte[] compress(byte[] contents, Deflater deflater) {
+        deflater.reset();
+        deflater.setInput(contents);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(contents.length / 2 + 16);
+        byte[] buffer = new byte[Math.min(contents.length + 64, Utils.BUFFER_SIZE)];
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return compressed.toByteArray();
+    }
+
+    /* Deletes both files of this pack. */
+    void delete() {
+        index.delete();
+        data.delete();
+    }
+
+    /* Writes a new pack into a directory, one object at a time.
+     * Only the index entries are kept in memory, so callers bound the memory by bounding the number of objects. */
+    static class Writer {
+
+        /* Index entry of an object already written into the data file. */
+        private static class Entry {
+            final ObjectId id;
+            final long offset;
+            final int length;
+
+            Entry(ObjectId id, long offset, int length) {
+                this.id = id;
+                this.offset = offset;
+                this.length = length;
+            }
+        }
+
+        private final File dir;
+        private int flags;
+        private final File tempData;
+        private final FileOutputStream dataFile;
+        private final DataOutputStream output;
+        private final ArrayList<Entry> written = new ArrayList<>();
+        private final HashSet<ObjectId> writtenIDs = new HashSet<>();
+        private final Deflater deflater;
+        private long offset = 0;
+
+        /* Starts a pack in DIR with FLAGS. DIR is created if it does not exist. */
+        Writer(File dir, int flags) throws IOException {
+            this(dir, flags, Deflater.DEFAULT_COMPRESSION);
+        }
+
+        /* Starts a pack in DIR with FLAGS, whose objects are compressed at LEVEL, one of the Deflater levels.
+           Objects added through addCompressed() keep the level they were compressed at. */
+        Writer(File dir, int flags, int level) throws IOException {
+            this.dir = dir;
+            this.flags = flags;
+            deflater = new Deflater(level);
+            dir.mkdirs();
+            tempData = File.createTempFile("incoming-", DATA_SUFFIX, dir);
+            dataFile = new FileOutputStream(tempData);
+            output = new DataOutputStream(new BufferedOutputStream(dataFile));
+        }
+
+        /* Returns the number of objects added so far. */
+        int size() {
+            return written.size();
+        }
+
+        /* Leaves FLAG out of the flags the pack is written with. */
+        void clearFlag(int flag) {
+            flags &= ~flag;
+        }
+
+        /* Adds the object with ID and CONTENTS. Objects added twice are written once. */
+        void add(ObjectId id, byte[] contents) throws IOException {
+            if (!writtenIDs.contains(id)) {
+                addCompressed(id, compress(contents, deflater));
+            }
+        }
+
+        /* Adds the object with ID whose contents are read from CONTENTS, compressing them chunk by chunk so that
+           they are never held in memory as a whole. Objects added twice are written once. CONTENTS is not closed. */
+        void add(ObjectId id, InputStream contents) throws IOException {
+            if (!writtenIDs.add(id)) {
+                return;
+            }
+            Perf.PhaseEvent event = Perf.begin(Perf.Phase.WRITE);
+            deflater.reset();
+            byte[] input = new byte[Utils.BUFFER_SIZE];
+            byte[] compressed = new byte[Utils.BUFFER_SIZE];
+            long length = 0;
+            for (int n = contents.read(input); n >= 0; n = contents.read(input)) {
+                deflater.setInput(input, 0, n);
+                while (!deflater.needsInput()) {
+                    int m = deflater.deflate(compressed);
+                    output.write(compressed, 0, m);
+                    length += m;
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                int m = deflater.deflate(compressed);
+                output.write(compressed, 0, m);
+                length += m;
+            }
+            Perf.end(event, tempData, length);
+            written.add(new Entry(id, offset, (int) length));
+            offset += length;
+        }
+
+        /* Adds the object with ID whose contents were compressed by compress() into COMPRESSED.
+         * Objects added twice are written once. */
+        void addCompressed(ObjectId id, byte[] compressed) throws IOException {
+            if (!writtenIDs.add(id)) {
+                return;
+            }
+            Perf.PhaseEvent event = Perf.begin(Perf.Phase.WRITE);
+            output.write(compressed);
+            Perf.end(event, tempData, compressed.length);
+            written.add(new Entry(id, offset, compressed.length));
+            offset += compressed.length;
+        }
+
+        /* Writes the index and gives both files their final name. Returns the new pack.
+         * The data file is synced before the index file is renamed, and a pack is only visible once its index file
+           exists, so that readers never see a partial pack. */
+        Pack finish() throws IOException {
+            deflater.end();
+            output.flush();
+            dataFile.getChannel().force(true);
+            output.close();
+            written.sort((a, b) -> a.id.compareTo(b.id));
+
+            MessageDigest digester;
+            try {
+                digester = MessageDigest.getInstance("SHA3-256");
+            } catch (NoSuchAlgorithmException exc) {
+                throw new IllegalArgumentException(exc.getMessage());
+            }
+            int[] fanout = new int[256];
+            for (Entry entry : written) {
+                digester.update(entry.id.toBytes());
+                fanout[entry.id.firstByte()]++;
+            }
+            for (int i = 1; i < 256; i++) {
+                fanout[i] += fanout[i - 1];
+            }
+            String name = "pack-" + Utils.sha3Helper(digester.digest());
+
+            File tempIndex = File.createTempFile("incoming-", INDEX_SUFFIX, dir);
+            try (FileOutputStream indexFile = new FileOutputStream(tempIndex);
+                 DataOutputStream index = new DataOutputStream(new BufferedOutputStream(indexFile))) {
+                index.writeInt(MAGIC);
+                index.writeInt(VERSION);
+                index.writeInt(flags);
+                index.writeInt(written.size());
+                for (int count : fanout) {
+                    index.writeInt(count);
+                }
+                for (Entry entry : written) {
+                    entry.id.write(index);
+                    index.writeLong(entry.offset);
+                    index.writeInt(entry.length);
+                }
+                index.flush();
+                indexFile.getChannel().force(true);
+            }
+            File data = Utils.subFile(dir, name + DATA_SUFFIX);
+            File index = Utils.subFile(dir, name + INDEX_SUFFIX);
+            Files.move(tempData.toPath(), data.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempIndex.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return new Pack(index);
+        }
+
+        /* Discards the pack being written. */
+        void abort() throws IOException {
+            deflater.end();
+            output.close();
+            tempData.delete();
+        }
+
+    }
+
+}
\ No newline at end of file
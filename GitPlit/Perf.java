@@ -0,0 +1,144 @@
+package gitplit;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/* Performance instrumentation of GitPlit.
+ * Every phase (file reading, object decoding, hashing, file writing) is recorded as a JDK Flight Recorder event
+   whenever a recording is running, e.g. java -XX:StartFlightRecording=filename=gitplit.jfr gitplit.Main ...
+ * The same phases are also summed up and printed at command exit when the summary is enabled through --perf.
+ * When neither is active, a phase costs one small allocation and two checks.
+ * Counters are LongAdders, so that the threads of an embedding program can record phases at the same time. */
+class Perf {
+
+    /* Phases a command spends its time on. */
+    enum Phase {
+        READ("file read"), DECODE("object decode"), HASH("hashing"), WRITE("file write");
+
+        /* Name of the phase in the summary and in the Flight Recorder events. */
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    /* Flight Recorder event of one phase. Its own timing is kept for the summary. */
+    @Name("gitplit.Phase")
+    @Label("GitPlit Phase")
+    @Category("GitPlit")
+    @StackTrace(false)
+    static final class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+        @Label("Path")
+        String path;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+        /* Start time for the summary. Transient fields are not recorded. */
+        transient long start;
+        transient Phase kind;
+    }
+
+    /* Flight Recorder event of a whole command. */
+    @Name("gitplit.Command")
+    @Label("GitPlit Command")
+    @Category("GitPlit")
+    @StackTrace(false)
+    static final class CommandEvent extends Event {
+        @Label("Command")
+        String command;
+    }
+
+    /* Whether the summary is printed at command exit. */
+    private static volatile boolean enabled = false;
+    /* Number of calls, time in nanoseconds and bytes of each phase. */
+    private static final LongAdder[] calls = adders();
+    private static final LongAdder[] nanos = adders();
+    private static final LongAdder[] bytes = adders();
+    /* Number of file system lookups made through Utils: existence and type checks, and directory listings. */
+    private static final LongAdder filesStatted = new LongAdder();
+
+    /* Returns one new counter per phase. */
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[Phase.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /* Enables the summary printed by printSummary(). */
+    static void enable() {
+        enabled = true;
+    }
+
+    /* Returns whether the summary is enabled. */
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /* Starts the phase KIND. Must be followed by end(). */
+    static PhaseEvent begin(Phase kind) {
+        PhaseEvent event = new PhaseEvent();
+        event.kind = kind;
+        if (enabled) {
+            event.start = System.nanoTime();
+        }
+        event.begin();
+        return event;
+    }
+
+    /* Ends the phase EVENT that worked on FILE (may be null) and processed SIZE bytes. */
+    static void end(PhaseEvent event, File file, long size) {
+        event.end();
+        if (enabled) {
+            int i = event.kind.ordinal();
+            calls[i].increment();
+            nanos[i].add(System.nanoTime() - event.start);
+            bytes[i].add(size);
+        }
+        if (event.shouldCommit()) {
+            event.phase = event.kind.label;
+            event.path = file == null ? null : file.getPath();
+            event.bytes = size;
+            event.commit();
+        }
+    }
+
+    /* Records one file system lookup. */
+    static void stat() {
+        if (enabled) {
+            filesStatted.increment();
+        }
+    }
+
+    /* Prints the summary of COMMAND that took NANOSECONDS into OUT. */
+    static void printSummary(PrintStream out, String command, long nanoseconds) {
+        out.println("=== Performance: " + command + " ===");
+        out.printf("%-14s %10s %12s %14s%n", "phase", "calls", "time (ms)", "bytes");
+        long accounted = 0;
+        for (Phase phase : Phase.values()) {
+            int i = phase.ordinal();
+            accounted += nanos[i].sum();
+            out.printf("%-14s %10d %12.3f %14d%n", phase.label, calls[i].sum(), nanos[i].sum() / 1e6, bytes[i].sum());
+        }
+        out.printf("%-14s %10s %12.3f%n", "other", "", (nanoseconds - accounted) / 1e6);
+        out.printf("%-14s %10s %12.3f%n", "total", "", nanoseconds / 1e6);
+        out.println("Objects decoded: " + calls[Phase.DECODE.ordinal()].sum());
+        out.println("Bytes read: " + bytes[Phase.READ.ordinal()].sum());
+        out.println("Bytes written: " + bytes[Phase.WRITE.ordinal()].sum());
+        out.println("Files stat'd: " + filesStatted.sum());
+    }
+
+}
\ No newline at end of file
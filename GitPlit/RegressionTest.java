@@ -0,0 +1,199 @@
+package gitplit;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+
+/* Regression tests. Each test runs against fresh repositories in a temporary directory, which is deleted afterwards,
+   and throws an AssertionError or any other exception to fail.
+ * Tests go through the Repository API, and run commands in their own JVM where another process is part of what is
+   tested. */
+public class RegressionTest {
+
+    /* A test, given a temporary directory of its own. */
+    private interface Test {
+        void run(File dir) throws Exception;
+    }
+
+    private static int failures = 0;
+
+    /* Usage: java gitplit.RegressionTest
+     * Prints one line per test, and exits with status 1 if any of them failed. */
+    public static void main(String[] args) throws IOException {
+        run("fast-import of the same stream into two branches", RegressionTest::reimport);
+        run("reading after another instance ran gc", RegressionTest::readAfterGc);
+        run("gc of a partial clone keeps fetched blobs", RegressionTest::gcPartialClone);
+        run("rebase of commits already upstream", RegressionTest::rebaseUpstream);
+        run("generator profile without commits", RegressionTest::generateNoCommits);
+        if (failures > 0) {
+            System.out.println(failures + " tests failed.");
+            System.exit(1);
+        }
+        System.out.println("All tests passed.");
+    }
+
+    /* Runs TEST in a new temporary directory and prints its outcome under NAME. */
+    private static void run(String name, Test test) throws IOException {
+        File dir = Files.createTempDirectory("gitplit-test-").toFile();
+        try {
+            test.run(dir);
+            System.out.println("PASS " + name);
+        } catch (Exception | AssertionError exc) {
+            failures++;
+            System.out.println("FAIL " + name + ": " + exc);
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir.toPath())) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /* Throws an AssertionError with MESSAGE unless CONDITION holds. */
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /* Returns a new repository in the directory NAME of DIR. */
+    private static Repository init(File dir, String name) throws IOException {
+        File repoDir = Utils.subFile(dir, name);
+        repoDir.mkdirs();
+        return Repository.init(repoDir);
+    }
+
+    /* Writes CONTENTS into the file named FILENAME of the working directory of REPOSITORY, stages it and commits it
+       with MESSAGE. Returns the ID of the new commit. */
+    private static String commitFile(Repository repository, String fileName, String contents, String message)
+            throws IOException {
+        Utils.writeContents(Utils.subFile(repository.CWD, fileName), contents);
+        repository.updateAdditions(fileName);
+        return repository.commit(message);
+    }
+
+    /* Imports the fast-import stream TEXT into REPOSITORY. */
+    private static Repository.ImportResult fastImport(Repository repository, String text) throws IOException {
+        return repository.fastImport(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /* Importing a stream whose commits all exist already writes nothing and still moves the branch. */
+    private static void reimport(File dir) throws IOException {
+        Repository repository = init(dir, "repo");
+        String stream = "commit %s\ntime 2024/01/01 00:00:00\ndata 2\nhi\nM inline a.txt\ndata 2\nhi\ndone\n";
+        Repository.ImportResult first = fastImport(repository, String.format(stream, "one"));
+        Repository.ImportResult second = fastImport(repository, String.format(stream, "other"));
+        check(first.commits == 1 && first.blobs == 1, "the first import wrote " + first.commits + " commits");
+        check(second.commits == 0 && second.blobs == 0, "the second import wrote " + second.commits + " commits");
+        check(second.branches.get("other").equals(first.branches.get("one")), "the branches differ");
+        check(repository.readCommit(second.branches.get("other")).trackingFiles().containsKey("a.txt"),
+              "the imported commit does not track a.txt");
+    }
+
+    /* An instance keeps reading objects that another one packed and deleted, or repacked into a new pack, after it
+       opened the packs. */
+    private static void readAfterGc(File dir) throws IOException {
+        Repository writer = init(dir, "repo");
+        String first = commitFile(writer, "a.txt", "a", "a");
+        Repository reader = Repository.open(writer.CWD);
+        check(reader.headCommit().message().equals("a"), "the head commit was not read");
+
+        check(writer.gc(false, Repository.GC_GRACE_DAYS).packed > 0, "gc packed nothing");
+        check(!Utils.subFile(writer.COMMITS, first).exists(), "gc left the commit loose");
+        check(reader.headCommit().message().equals("a"), "the packed head commit was not read");
+        check(reader.status().untracked.isEmpty(), "a.txt is shown as untracked");
+
+        String second = commitFile(writer, "b.txt", "b", "b");
+        writer.gc(false, Repository.GC_GRACE_DAYS);
+        writer.gc(true, Repository.GC_GRACE_DAYS);
+        check(reader.readCommit(second).message().equals("b"), "the repacked commit was not read");
+        check(Utils.byteToString(reader.readBlob(reader.headCommit().trackingFiles().get("a.txt"))).equals("a"),
+              "the repacked blob was not read");
+    }
+
+    /* Packs are only closed when the walk packed every blob, so that blobs a partial clone fetches later are still
+       found reachable by the next incremental gc. */
+    private static void gcPartialClone(File dir) throws IOException {
+        Repository source = init(dir, "source");
+        commitFile(source, "a.txt", "a", "a");
+        source.gc(false, Repository.GC_GRACE_DAYS);
+        check(closedPacks(source) > 0, "gc of a complete repository closed no pack");
+
+        File cloneDir = Utils.subFile(dir, "clone");
+        cloneDir.mkdirs();
+        source.cloneInto(cloneDir, 0, true);
+        Repository clone = Repository.open(cloneDir);
+        clone.gc(false, 0);
+        check(closedPacks(clone) == 0, "gc of a partial clone missing blobs closed a pack");
+
+        String blobID = clone.headCommit().trackingFiles().get("a.txt");
+        clone.readBlob(blobID);
+        Utils.subFile(clone.BLOBS, blobID).setLastModified(0);
+        clone.gc(false, 0);
+        check(clone.objectExists(blobID, true), "gc pruned the fetched blob");
+    }
+
+    /* A rebase whose commits upstream already has drops them all and moves the branch, and is told apart from a
+       fast-forward, which drops nothing. */
+    private static void rebaseUpstream(File dir) throws IOException {
+        Repository repository = init(dir, "repo");
+        commitFile(repository, "a.txt", "a", "a");
+        repository.addBranch("topic");
+        repository.updateBranch("topic");
+        repository.checkoutBranch("topic");
+        commitFile(repository, "b.txt", "b", "b on topic");
+        repository.checkoutBranch("master");
+        String upstream = commitFile(repository, "b.txt", "b", "b on master");
+        repository.checkoutBranch("topic");
+
+        Repository.ReplayResult rebased = repository.rebase("master");
+        check(rebased.commits == 0 && rebased.dropped == 1, "the rebase wrote " + rebased.commits
+              + " commits and dropped " + rebased.dropped);
+        check(branchHead(repository, "topic").equals(upstream), "topic was not moved to master");
+
+        commitFile(repository, "c.txt", "c", "c");
+        repository.checkoutBranch("master");
+        Repository.ReplayResult forwarded = repository.rebase("topic");
+        check(forwarded.commits == 0 && forwarded.dropped == 0, "the fast-forward dropped " + forwarded.dropped);
+        check(branchHead(repository, "master").equals(branchHead(repository, "topic")), "master was not moved");
+    }
+
+    /* A profile whose commit count is below 1 once scaled is rejected rather than generating one commit. */
+    private static void generateNoCommits(File dir) {
+        String[][] cases = {{"0", "1"}, {"10", "0"}, {"10", "0.01"}};
+        for (String[] commitsAndScale : cases) {
+            Properties profile = new Properties();
+            profile.setProperty("commits", commitsAndScale[0]);
+            try {
+                new Generator(profile, Double.parseDouble(commitsAndScale[1]));
+                throw new AssertionError(commitsAndScale[0] + " commits at scale " + commitsAndScale[1]
+                                         + " were accepted");
+            } catch (IllegalArgumentException exc) {
+                check(exc.getMessage().equals("Commit count must be at least 1."), "wrong error: " + exc);
+            }
+        }
+    }
+
+    /* Returns the ID of the commit the branch BRANCHNAME of REPOSITORY points at. */
+    private static String branchHead(Repository repository, String branchName) {
+        return Utils.readAsString(Utils.subFile(repository.BRANCHES, branchName));
+    }
+
+    /* Returns the number of closed packs of REPOSITORY. */
+    private static int closedPacks(Repository repository) {
+        int count = 0;
+        for (Pack pack : Pack.openAll(repository.PACKS)) {
+            if (pack.hasFlag(Pack.FLAG_CLOSED)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,182 @@
+package gitplit;
+
+import java.util.*;
+
+
+/* Rename and copy detection between two versions of the tracked files.
+ * Each candidate file is read once and summarized by a MinHash sketch of its set of lines: for each of HASHES
+   hash functions, the smallest hash of any line. The share of equal entries in two sketches estimates the share of
+   lines the files have in common.
+ * Sketches are split into BANDS bands of ROWS entries, and only files with an equal band are compared, so that N
+   removed files and M added files cost N + M reads rather than N * M comparisons. */
+class Renames {
+
+    /* Similarity in percent from which two files are paired. */
+    static final int SIMILARITY = 50;
+
+    private static final int HASHES = 64;
+    private static final int ROWS = 2;
+    private static final int BANDS = HASHES / ROWS;
+
+    /* A file of the new version that is a renamed or copied file of the old version. */
+    static class Pair {
+        final String from;
+        final String to;
+        /* Estimated similarity in percent. */
+        final int similarity;
+        final boolean copy;
+
+        Pair(String from, String to, int similarity, boolean copy) {
+            this.from = from;
+            this.to = to;
+            this.similarity = similarity;
+            this.copy = copy;
+        }
+    }
+
+    /* Returns the renamed and copied files of NEWVERSION, by name of the new file.
+     * A file named in ADDED is a rename of a file named in REMOVED, which each belong to only one rename. Failing
+       that, it is a copy of a file named in SOURCES, or of an already renamed file of REMOVED.
+     * REMOVED and SOURCES name files of OLDVERSION, and ADDED names files of NEWVERSION. */
+    static TreeMap<String, Pair> detect(Diff.Version oldVersion, Collection<String> removed, Diff.Version newVersion,
+                                        Collection<String> added, Collection<String> sources) {
+        TreeMap<String, Pair> pairs = new TreeMap<>();
+        if (added.isEmpty() || (removed.isEmpty() && sources.isEmpty())) {
+            return pairs;
+        }
+        ArrayList<String> fromNames = new ArrayList<>(new TreeSet<>(removed));
+        int removedCount = fromNames.size();
+        for (String name : new TreeSet<>(sources)) {
+            if (!removed.contains(name)) {
+                fromNames.add(name);
+            }
+        }
+        ArrayList<String> toNames = new ArrayList<>(new TreeSet<>(added));
+
+        /* Files with the same contents are paired without being read. */
+        HashMap<String, ArrayList<Integer>> byBlobID = new HashMap<>();
+        for (int i = 0; i < fromNames.size(); i++) {
+            byBlobID.computeIfAbsent(oldVersion.blobID(fromNames.get(i)), id -> new ArrayList<>()).add(i);
+        }
+        boolean[] renamed = new boolean[fromNames.size()];
+        ArrayList<Integer> unpaired = new ArrayList<>();
+        for (int j = 0; j < toNames.size(); j++) {
+            ArrayList<Integer> same = byBlobID.get(newVersion.blobID(toNames.get(j)));
+            if (same == null) {
+                unpaired.add(j);
+                continue;
+            }
+            int from = same.get(0);
+            for (int i : same) {
+                if (i < removedCount && !renamed[i]) {
+                    from = i;
+                    break;
+                }
+            }
+            boolean copy = from >= removedCount || renamed[from];
+            renamed[from] = true;
+            pairs.put(toNames.get(j), new Pair(fromNames.get(from), toNames.get(j), 100, copy));
+        }
+        if (unpaired.isEmpty()) {
+            return pairs;
+        }
+
+        /* Sketches the other files and compares the ones sharing a band. */
+        long[][] fromSketches = new long[fromNames.size()][];
+        ArrayList<HashMap<Long, ArrayList<Integer>>> bands = new ArrayList<>();
+        for (int band = 0; band < BANDS; band++) {
+            bands.add(new HashMap<>());
+        }
+        for (int i = 0; i < fromNames.size(); i++) {
+            fromSketches[i] = sketch(oldVersion.contents(fromNames.get(i)));
+            for (int band = 0; fromSketches[i] != null && band < BANDS; band++) {
+                bands.get(band).computeIfAbsent(bandKey(fromSketches[i], band), key -> new ArrayList<>()).add(i);
+            }
+        }
+        ArrayList<long[]> candidates = new ArrayList<>();
+        for (int j : unpaired) {
+            long[] sketch = sketch(newVersion.contents(toNames.get(j)));
+            if (sketch == null) {
+                continue;
+            }
+            HashSet<Integer> compared = new HashSet<>();
+            for (int band = 0; band < BANDS; band++) {
+                for (int i : bands.get(band).getOrDefault(bandKey(sketch, band), new ArrayList<>())) {
+                    if (!compared.add(i)) {
+                        continue;
+                    }
+                    int similarity = similarity(fromSketches[i], sketch);
+                    if (similarity >= SIMILARITY) {
+                        candidates.add(new long[] {similarity, i, j});
+                    }
+                }
+            }
+        }
+
+        /* The most similar pairs are taken first. Each removed file is renamed once, and copied otherwise. */
+        candidates.sort((x, y) -> x[0] != y[0] ? Long.compare(y[0], x[0])
+                                               : x[1] != y[1] ? Long.compare(x[1], y[1]) : Long.compare(x[2], y[2]));
+        for (long[] candidate : candidates) {
+            int i = (int) candidate[1];
+            String to = toNames.get((int) candidate[2]);
+            if (i < removedCount && !renamed[i] && !pairs.containsKey(to)) {
+                renamed[i] = true;
+                pairs.put(to, new Pair(fromNames.get(i), to, (int) candidate[0], false));
+            }
+        }
+        for (long[] candidate : candidates) {
+            int i = (int) candidate[1];
+            String to = toNames.get((int) candidate[2]);
+            if (!pairs.containsKey(to) && (i >= removedCount || renamed[i])) {
+                pairs.put(to, new Pair(fromNames.get(i), to, (int) candidate[0], true));
+            }
+        }
+        return pairs;
+    }
+
+    /* Returns the MinHash sketch of the set of lines of CONTENTS, or null if CONTENTS is empty. */
+    private static long[] sketch(byte[] contents) {
+        if (contents.length == 0) {
+            return null;
+        }
+        long[] sketch = new long[HASHES];
+        Arrays.fill(sketch, Long.MAX_VALUE);
+        int start = 0;
+        while (start < contents.length) {
+            int end = start;
+            long hash = 0xcbf29ce484222325L;
+            while (end < contents.length && contents[end] != '\n') {
+                hash = (hash ^ (contents[end++] & 0xff)) * 0x100000001b3L;
+            }
+            for (int i = 0; i < HASHES; i++) {
+                long value = Utils.mix(hash + i * 0x9e3779b97f4a7c15L);
+                if (value < sketch[i]) {
+                    sketch[i] = value;
+                }
+            }
+            start = end + 1;
+        }
+        return sketch;
+    }
+
+    /* Returns the key of the BAND-th band of SKETCH. */
+    private static long bandKey(long[] sketch, int band) {
+        long key = band;
+        for (int row = 0; row < ROWS; row++) {
+            key = Utils.mix(key ^ sketch[band * ROWS + row]);
+        }
+        return key;
+    }
+
+    /* Returns the share of equal entries of two sketches, in percent. */
+    private static int similarity(long[] sketch1, long[] sketch2) {
+        int equal = 0;
+        for (int i = 0; i < HASHES; i++) {
+            if (sketch1[i] == sketch2[i]) {
+                equal++;
+            }
+        }
+        return equal * 100 / HASHES;
+    }
+
+}
\ No newline at end of file
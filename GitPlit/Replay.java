@@ -0,0 +1,113 @@
+package gitplit;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+
+/* Replays commits on top of another one for cherry-pick and rebase, entirely on in-memory trees.
+ * Each commit is three-way merged from the tree of its first parent, the base, into the tree being built: a file the
+   commit changed is taken from it if the tree still has the base version, and left as is if the tree already has the
+   commit's version. Otherwise it is a conflict, and like merge() the file gets the contents of both sides.
+ * Only the new commits and the conflicting file versions are written. The working directory is left alone, so that
+   the caller updates it once from the final tree. Changed-path filters are computed on first use, like for fetched
+   commits. Renames are not followed. */
+class Replay {
+
+    private final Repository repository;
+    /* Tree being built, and the ID of the commit it is the tree of. */
+    private final HashMap<String, String> tree;
+    private String headID;
+    private int commitCount = 0;
+    private int droppedCount = 0;
+    /* Files left with the contents of both sides. */
+    private final ArrayList<String> conflicts = new ArrayList<>();
+
+    /* Starts replaying onto the commit with ONTOID of REPOSITORY, which tracks TREE. TREE is not changed. */
+    Replay(Repository repository, String ontoID, HashMap<String, String> tree) {
+        this.repository = repository;
+        this.tree = new HashMap<>(tree);
+        headID = ontoID;
+    }
+
+    /* Replays the changes COMMIT made to BASE, the files tracked by its first parent, with MESSAGE.
+     * Returns the ID of the new commit, or null if the tree already had all of those changes and no commit was
+       written. */
+    String apply(Commit commit, HashMap<String, String> base, String message) {
+        HashMap<String, String> theirs = commit.trackingFiles();
+        boolean changed = false;
+        for (Map.Entry<String, String> ent : base.entrySet()) {
+            if (!ent.getValue().equals(theirs.get(ent.getKey()))) {
+                changed |= merge(ent.getKey(), ent.getValue(), theirs.get(ent.getKey()));
+            }
+        }
+        for (Map.Entry<String, String> ent : theirs.entrySet()) {
+            if (!base.containsKey(ent.getKey())) {
+                changed |= merge(ent.getKey(), null, ent.getValue());
+            }
+        }
+        if (!changed) {
+            droppedCount++;
+            return null;
+        }
+        /* The commit is serialized right away, so it can share the tree that keeps changing. */
+        headID = repository.writeCommit(new Commit(message, Utils.getCurrentTime(), headID, null, tree));
+        commitCount++;
+        return headID;
+    }
+
+    /* Returns the ID of the last commit written, or of the commit replayed onto if there is none. */
+    String head() {
+        return headID;
+    }
+
+    /* Returns the files tracked by head(). */
+    HashMap<String, String> tree() {
+        return tree;
+    }
+
+    /* Returns the number of commits written. */
+    int commits() {
+        return commitCount;
+    }
+
+    /* Returns the number of commits left out because the tree already had their changes. */
+    int dropped() {
+        return droppedCount;
+    }
+
+    /* Returns the files left with the contents of both sides, in the order they were met. */
+    ArrayList<String> conflicts() {
+        return conflicts;
+    }
+
+    /* Helper function of apply().
+     * Merges the change of the file named FILENAME from the blob with BASEID to the one with THEIRID, either of which
+       is null if the file does not exist. Returns whether the tree changed. */
+    private boolean merge(String fileName, String baseID, String theirID) {
+        String ourID = tree.get(fileName);
+        String mergedID;
+        if (Objects.equals(ourID, theirID)) {
+            return false;
+        } else if (Objects.equals(ourID, baseID)) {
+            mergedID = theirID;
+        } else {
+            String ours = ourID == null ? "" : Utils.byteToString(repository.readBlob(ourID));
+            String theirs = theirID == null ? "" : Utils.byteToString(repository.readBlob(theirID));
+            String contents = Repository.conflictContents(fileName, ours, theirs);
+            mergedID = repository.writeBlob(contents.getBytes(StandardCharsets.UTF_8));
+            if (!conflicts.contains(fileName)) {
+                conflicts.add(fileName);
+            }
+        }
+        if (mergedID == null) {
+            tree.remove(fileName);
+        } else {
+            tree.put(fileName, mergedID);
+        }
+        return true;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,2358 @@
+package gitplit;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Function;
+
+
+/* A GitPlit repository opened on its working directory: the den of methods created for the execution of COMMAND.
+ * Every file is resolved against that directory rather than the one the program runs in, so that one program can
+   open many repositories. Results are returned, and refusals are thrown as IllegalStateException with the message
+   to display, so that Main only has to parse the command and display what comes back.
+ * Methods reading the repository can be called from many threads at once: the caches they fill are replaced whole,
+   never changed in place. Methods changing the staging area hold its lock, and refs are only updated under their
+   own lock, so that writers exclude each other whether they run in one program or in many. */
+@SuppressWarnings("unchecked")
+public class Repository {
+    
+    /* Name of the GitPlit repository - the main storage - in its working directory. Hidden by default. */
+    static final String DIRECTORY_NAME = ".gitplit_repository";
+    /* Name of the directory of the lock files of a GitPlit repository, created on first use. */
+    static final String LOCKS = "locks";
+    /* GitPlit java files copied by clone() along with the gitplit class directory. */
+    static final String[] PROGRAM_FILES = {"Blame.java", "Bundle.java", "ChangedPaths.java", "Commit.java",
+                                           "Diff.java", "FastImport.java", "Generator.java", "Ignore.java",
+                                           "Lock.java", "Main.java", "ObjectId.java", "Pack.java", "Perf.java",
+                                           "RegressionTest.java", "Renames.java", "Replay.java", "Repository.java",
+                                           "ScaleTest.java", "SparseCheckout.java", "Utils.java"};
+    /* Number of days unreachable objects are kept by gc() unless told otherwise. */
+    static final int GC_GRACE_DAYS = 14;
+    /* Maximum number of objects per pack written by gc(). Bounds the memory gc() needs for pack indexes. */
+    static final int GC_MAX_PACK_OBJECTS = 100000;
+    /* Number of packs above which gc() repacks everything into new packs. */
+    static final int GC_MAX_PACKS = 16;
+    
+    /* The state of the working directory returned by status(). File names are sorted. */
+    public static class Status {
+        public final String currentBranch;
+        public final ArrayList<String> branches = new ArrayList<>();
+        /* Files staged for addition, and for removal. */
+        public final ArrayList<String> staged = new ArrayList<>();
+        public final ArrayList<String> removed = new ArrayList<>();
+        /* Files changed in CWD since they were staged or committed, with "modified" or "deleted". */
+        public final TreeMap<String, String> modifications = new TreeMap<>();
+        public final ArrayList<String> untracked = new ArrayList<>();
+        /* Staged and untracked files detected as renamed or copied, with the file they come from. */
+        public final TreeMap<String, String> renamedFrom = new TreeMap<>();
+        public final TreeMap<String, String> copiedFrom = new TreeMap<>();
+        
+        Status(String currentBranch) {
+            this.currentBranch = currentBranch;
+        }
+    }
+    
+    /* A commit returned by log(), with its ID. */
+    public static class LogEntry {
+        public final String commitID;
+        public final Commit commit;
+        
+        LogEntry(String commitID, Commit commit) {
+            this.commitID = commitID;
+            this.commit = commit;
+        }
+    }
+    
+    /* The outcome of merge(). */
+    public static class MergeResult {
+        /* ID of the merge commit, or null if none was needed. */
+        public final String commitID;
+        /* Without a merge commit, whether the current branch could be fast-forwarded to the merged branch rather than
+           already having all of its commits. */
+        public final boolean fastForward;
+        /* Files left with the contents of both branches. */
+        public final ArrayList<String> conflicts;
+        
+        MergeResult(String commitID, boolean fastForward, ArrayList<String> conflicts) {
+            this.commitID = commitID;
+            this.fastForward = fastForward;
+            this.conflicts = conflicts;
+        }
+    }
+    
+    /* The outcome of cherryPick() and rebase(). */
+    public static class ReplayResult {
+        /* ID of the new head commit, or null if the current branch already had every commit. */
+        public final String commitID;
+        /* Number of commits written. */
+        public final int commits;
+        /* Number of commits left out because the branch replayed onto already had their changes. */
+        public final int dropped;
+        /* Files left with the contents of both sides. */
+        public final ArrayList<String> conflicts;
+        
+        ReplayResult(String commitID, int commits, int dropped, ArrayList<String> conflicts) {
+            this.commitID = commitID;
+            this.commits = commits;
+            this.dropped = dropped;
+            this.conflicts = conflicts;
+        }
+    }
+    
+    /* The objects sent by fetch() or push(). */
+    public static class TransferResult {
+        public final int commits;
+        public final int blobs;
+        public final long bytes;
+        
+        TransferResult(int commits, int blobs, long bytes) {
+            this.commits = commits;
+            this.blobs = blobs;
+            this.bytes = bytes;
+        }
+    }
+    
+    /* The objects packed and deleted by gc(). */
+    public static class GcResult {
+        public final int packed;
+        public final int pruned;
+        
+        GcResult(int packed, int pruned) {
+            this.packed = packed;
+            this.pruned = pruned;
+        }
+    }
+    
+    /* The objects and branches written by fastImport(). */
+    public static class ImportResult {
+        public final int commits;
+        public final int blobs;
+        /* New tip of each branch updated, in the order the stream first named them. */
+        public final Map<String, String> branches;
+        
+        ImportResult(int commits, int blobs, Map<String, String> branches) {
+            this.commits = commits;
+            this.blobs = blobs;
+            this.branches = branches;
+        }
+    }
+    
+    /* Working directory, whose files are tracked. */
+    final File CWD;
+    /* GitPlit repository - the main storage. */
+    final File GITPLIT;
+    /* Path of the repository whose commits, blobs and branches a worktree shares. Only exists in worktrees. */
+    final File COMMONDIR;
+    /* Repository holding the commits, blobs and branches: GITPLIT itself, or the one it shares as a worktree. */
+    final File COMMON;
+    /* Addition staging area. */
+    final File ADDITIONS;
+    /* Removal staging area. */
+    final File REMOVALS;
+    /* Storage for commits. */
+    final File COMMITS;
+    /* Storage for the contents of tracked files, named after the hash of their contents. */
+    final File BLOBS;
+    /* Storage for the packs of objects consolidated by gc(). */
+    final File PACKS;
+    /* IDs of the commits whose parents were left out by a shallow clone. Only exists in shallow clones. */
+    final File SHALLOW;
+    /* Path of the repository that missing blobs are fetched from. Only exists in partial clones. */
+    final File PROMISOR;
+    /* Name under which the staging area is locked. No file has this name. */
+    final File STAGING;
+    /* Name under which gc() is locked. No file has this name. */
+    final File GC;
+    /* Directory of the cached blames, created on first use. */
+    final File BLAME;
+    /* Directory of the changed-path filters of the commits, created on first use. */
+    final File CHANGED_PATHS;
+    /* Storage for the head commit information. */
+    final File HEAD_COMMIT;
+    /* Storage for branches. */
+    final File BRANCHES;
+    /* Paths of the worktrees sharing the repository, one file per worktree. */
+    final File WORKTREES;
+    /* Storage for the current branch information. */
+    final File CURRENT_BRANCH;
+    /* Patterns of the files materialized in CWD, read by SparseCheckout. Only exists in sparse checkouts. */
+    final File SPARSE_CHECKOUT;
+    
+    /* Packs of the repository, opened on first use. */
+    private volatile ArrayList<Pack> packs = null;
+    /* Contents of SHALLOW, read on first use. */
+    private volatile HashSet<ObjectId> shallowCommits = null;
+    /* Repository named in PROMISOR, opened on first use. */
+    private volatile Repository promisorRepository = null;
+    
+    /* Opens the GitPlit repository of the working directory DIR, which may not be initialized yet. */
+    private Repository(File dir) {
+        CWD = dir;
+        GITPLIT = Utils.subFile(dir, DIRECTORY_NAME);
+        COMMONDIR = Utils.subFile(GITPLIT, "commondir");
+        COMMON = Utils.exists(COMMONDIR) ? new File(Utils.readAsString(COMMONDIR)) : GITPLIT;
+        ADDITIONS = Utils.subFile(GITPLIT, "additions");
+        REMOVALS = Utils.subFile(GITPLIT, "removals");
+        COMMITS = Utils.subFile(COMMON, "commits");
+        BLOBS = Utils.subFile(COMMON, "blobs");
+        PACKS = Utils.subFile(COMMON, "packs");
+        SHALLOW = Utils.subFile(COMMON, "shallow");
+        PROMISOR = Utils.subFile(COMMON, "promisor");
+        STAGING = Utils.subFile(GITPLIT, "staging");
+        GC = Utils.subFile(COMMON, "gc");
+        BLAME = Utils.subFile(COMMON, "blame");
+        CHANGED_PATHS = Utils.subFile(COMMON, "changed_paths");
+        HEAD_COMMIT = Utils.subFile(GITPLIT, "head_commit");
+        BRANCHES = Utils.subFile(COMMON, "branches");
+        WORKTREES = Utils.subFile(COMMON, "worktrees");
+        CURRENT_BRANCH = Utils.subFile(GITPLIT, "current_branch");
+        SPARSE_CHECKOUT = Utils.subFile(GITPLIT, "sparse_checkout");
+    }
+    
+    /* Returns whether the directory DIR has a GitPlit repository. */
+    public static boolean exists(File dir) {
+        return Utils.exists(Utils.subFile(dir, DIRECTORY_NAME));
+    }
+    
+    /* Opens the GitPlit repository of the working directory DIR.
+     * Throws IllegalStateException if DIR has none. */
+    public static Repository open(File dir) {
+        if (!exists(dir)) {
+            throw new IllegalStateException("A GitPlit repository does not exist in the provided repo path.");
+        }
+        return new Repository(dir);
+    }
+    
+    /* Initializes a GitPlit repository in the working directory DIR, creates the very first commit and returns the
+       repository.
+     * Throws IllegalStateException if a repository already exists. */
+    public static Repository init(File dir) throws IOException {
+        if (exists(dir)) {
+            throw new IllegalStateException("A GitPlit version control system already exists in the current "
+                                            + "directory.");
+        }
+        Repository repository = new Repository(dir);
+        repository.setUp();
+        return repository;
+    }
+    
+    /* Helper function of init().
+     * Creates the storage of the repository and the very first commit. */
+    private void setUp() throws IOException {
+        GITPLIT.mkdir();
+        ADDITIONS.mkdir();
+        REMOVALS.mkdir();
+        COMMITS.mkdir();
+        BLOBS.mkdir();
+        PACKS.mkdir();
+        HEAD_COMMIT.createNewFile();
+        BRANCHES.mkdir();
+        CURRENT_BRANCH.createNewFile();
+        
+        addBranch("master");
+        updateCurrentBranch("master");
+        addCommit(new Commit("initial commit", Utils.getCurrentTime(), this));
+    }
+    
+    /* Creates the branch BRANCHNAME.
+     * Throws IllegalStateException if it exists already. */
+    public void addBranch(String branchName) throws IOException {
+        File newBranch = Utils.subFile(BRANCHES, branchName);
+        if (Utils.exists(newBranch)) {
+            throw new IllegalStateException("A branch with that name already exists.");
+        }
+        newBranch.createNewFile();
+    }
+    
+    /* Removes the branch BRANCHNAME.
+     * Throws IllegalStateException if it does not exist or is checked out here or in a worktree. */
+    public void removeBranch(String branchName) {
+        File toBeRemoved = Utils.subFile(BRANCHES, branchName);
+        if (!Utils.exists(toBeRemoved)) {
+            throw new IllegalStateException("A branch with that name does not exist.");
+        } else if (Utils.readAsString(CURRENT_BRANCH).equals(branchName)) {
+            throw new IllegalStateException("Cannot remove the current branch.");
+        } else if (checkedOutIn(branchName) != null) {
+            throw new IllegalStateException("Cannot remove a branch checked out in another worktree.");
+        }
+        toBeRemoved.delete();
+    }
+    
+    /* Updates the branch BRANCHNAME with the head commit ID. */
+    public void updateBranch(String branchName) {
+        File branch = Utils.subFile(BRANCHES, branchName);
+        writeRef(COMMON, branch, Utils.readAsString(HEAD_COMMIT));
+    }
+    
+    /* Updates the branch BRANCHNAME with the provided commit ID. */
+    public void updateBranch(String branchName, String commitID) {
+        File branch = Utils.subFile(BRANCHES, branchName);
+        writeRef(COMMON, branch, commitID);
+    }
+    
+    /* Updates CURRENT_BRANCH with BRANCHNAME. */
+    public void updateCurrentBranch(String branchName) {
+        writeRef(GITPLIT, CURRENT_BRANCH, branchName);
+    }
+    
+    /* Commits the staged files with MESSAGE and returns the ID of the new commit.
+     * Throws IllegalStateException if MESSAGE is empty or nothing is staged. */
+    public String commit(String message) throws IOException {
+        Lock staging = lockStaging();
+        try {
+            if (message.isEmpty()) {
+                throw new IllegalStateException("Please enter a commit message.");
+            } else if (Utils.list(ADDITIONS).length == 0 && Utils.list(REMOVALS).length == 0) {
+                throw new IllegalStateException("No changes added to the commit.");
+            }
+            return addCommit(new Commit(message, Utils.getCurrentTime(), this));
+        } finally {
+            staging.close();
+        }
+    }
+    
+    /* Creates a commit file containing the serialized information of the provided commit object NEWCOMMIT, and
+       returns its ID.
+     * Also stores its changed-path filter, from the files staged for addition or removal. */
+    public String addCommit(Commit newCommit) throws IOException {
+        String commitID = writeCommit(newCommit);
+        HashSet<String> staged = new HashSet<>(Arrays.asList(Utils.list(ADDITIONS)));
+        staged.addAll(Arrays.asList(Utils.list(REMOVALS)));
+        ChangedPaths.write(this, ObjectId.fromHex(commitID), newCommit, staged);
+        
+        /* The branch and the head commit only move if they still point at the parent of NEWCOMMIT. */
+        String expected = newCommit.parentID();
+        compareAndSetRef(COMMON, Utils.subFile(BRANCHES, Utils.readAsString(CURRENT_BRANCH)), expected, commitID);
+        compareAndSetRef(GITPLIT, HEAD_COMMIT, expected, commitID);
+        clearAdditions();
+        clearRemovals();
+        return commitID;
+    }
+    
+    /* Writes the commit file of NEWCOMMIT without moving any branch, and returns its ID. */
+    String writeCommit(Commit newCommit) {
+        byte[] contents = Utils.serialize(newCommit);
+        String commitID = Utils.sha3(contents);
+        writeObjectFile(Utils.subFile(COMMITS, commitID), contents);
+        return commitID;
+    }
+    
+    /* Creates a commit file containing the serialized information of the provided commit object NEWCOMMIT, and
+       returns its ID.
+     * Updates NEWCOMMIT's secondParentID with SECONDPARENTCOMMITID. */
+    public String addCommit(Commit newCommit, String secondParentCommitID) throws IOException {
+        newCommit.setSecondParent(secondParentCommitID);
+        return addCommit(newCommit);
+    }
+    
+    /* Updates HEAD_COMMIT with COMMITID. */
+    public void updateHead(String commitID) {
+        writeRef(GITPLIT, HEAD_COMMIT, commitID);
+    }
+    
+    /* Returns the lock of the staging area, held by the methods changing it so that two of them never interleave. */
+    private Lock lockStaging() {
+        return lock(GITPLIT, STAGING);
+    }
+    
+    /* Returns the lock of FILE in the GitPlit repository REPOSITORY, waiting for another command to release it.
+     * Throws IllegalStateException if it is not released in time. */
+    static Lock lock(File repository, File file) {
+        return Lock.acquire(Utils.subFile(repository, LOCKS), file);
+    }
+    
+    /* Updates the ref file REF of the GitPlit repository REPOSITORY with VALUE under its lock. */
+    static void writeRef(File repository, File ref, String value) {
+        try (Lock lock = lock(repository, ref)) {
+            lock.commit(value);
+        }
+    }
+    
+    /* Updates the ref file REF of the GitPlit repository REPOSITORY with VALUE under its lock, provided it still
+       holds EXPECTED. A null EXPECTED stands for a missing or empty ref.
+     * Throws IllegalStateException if REF holds another value, i.e. another command updated it since EXPECTED was
+       read. REF is left unchanged. */
+    static void compareAndSetRef(File repository, File ref, String expected, String value) {
+        try (Lock lock = lock(repository, ref)) {
+            String current = Utils.exists(ref) ? Utils.readAsString(ref) : "";
+            if (!current.equals(expected == null ? "" : expected)) {
+                throw new IllegalStateException(ref.getName() + " was updated by another command. Try again.");
+            }
+            lock.commit(value);
+        }
+    }
+    
+    /* Writes CONTENTS into FILE, an object file named after its contents, with Utils.writeAtomically().
+     * The temporary file is made in the repository directory, so that it never shows up among the objects. Two
+       commands writing the same object write the same contents, so either may win. */
+    static void writeObjectFile(File file, byte[] contents) {
+        writeObjectFile(file, new ByteArrayInputStream(contents));
+    }
+    
+    /* Writes the contents read from CONTENTS into FILE, an object file named after its contents, like
+       writeObjectFile() above. CONTENTS is streamed, so that its size is not bounded by the heap. It is not closed. */
+    static void writeObjectFile(File file, InputStream contents) {
+        Utils.writeAtomically(file, file.getParentFile().getParentFile(), contents);
+    }
+    
+    /* Copies a file in CWD named FILENAME and puts it into the addition staging area.
+     * Throws IllegalStateException if there is no such file, or if it is tracked by the head commit as it is. */
+    public void updateAdditions(String fileName) throws IOException {
+        Lock staging = lockStaging();
+        try {
+            stageAddition(fileName);
+        } finally {
+            staging.close();
+        }
+    }
+    
+    /* Helper function of updateAdditions() and merge(). */
+    private void stageAddition(String fileName) throws IOException {
+        File fileInCWD = Utils.subFile(CWD, fileName);
+        if (!Utils.exists(fileInCWD)) {
+            throw new IllegalStateException("File does not exist.");
+        }
+        
+        File stagedForRemoval = Utils.subFile(REMOVALS, fileName);
+        stagedForRemoval.delete();
+        Commit headCommit = headCommit();
+        HashMap<String, String> trackingFilesOfHC = headCommit.trackingFiles();
+        
+        if (trackingFilesOfHC.containsKey(fileName)
+            && trackingFilesOfHC.get(fileName).equals(Utils.sha3(fileInCWD))) {
+            throw new IllegalStateException("The file is already tracked and has no changes.");
+        }
+        
+        File stagedForAddition = Utils.subFile(ADDITIONS, fileName);
+        stagedForAddition.createNewFile();
+        Utils.copyContents(fileInCWD, stagedForAddition);
+    }
+    
+    /* Copies a file in CWD named FILENAME and puts it into the removal staging area.
+     * Note that the copy will be an empty file.
+     * Deletes the file in CWD afterwards.
+     * Throws IllegalStateException if the file is neither staged nor tracked. */
+    public void updateRemovals(String fileName) throws IOException {
+        Lock staging = lockStaging();
+        try {
+            stageRemoval(fileName);
+        } finally {
+            staging.close();
+        }
+    }
+    
+    /* Helper function of updateRemovals() and merge(). */
+    private void stageRemoval(String fileName) throws IOException {
+        File stagedForAddition = Utils.subFile(ADDITIONS, fileName);
+        Commit headCommit = headCommit();
+        HashMap<String, String> trackingFilesOfHC = headCommit.trackingFiles();
+        
+        if (!Utils.exists(stagedForAddition) && !trackingFilesOfHC.containsKey(fileName)) {
+            throw new IllegalStateException("The file is neither staged nor tracked by the head commit.");
+        }
+        stagedForAddition.delete();
+        
+        if (trackingFilesOfHC.containsKey(fileName)) {
+            File fileInCWD = Utils.subFile(CWD, fileName);
+            fileInCWD.delete();
+            Utils.subFile(REMOVALS, fileName).createNewFile();
+        }
+    }
+    
+    /* Returns the head Commit object. */
+    public Commit headCommit() {
+        return readCommit(Utils.readAsString(HEAD_COMMIT));
+    }
+    
+    /* Returns the Commit object with COMMITID, whether it is a loose commit file or packed by gc().
+     * Throws IllegalArgumentException if no such commit exists. */
+    public Commit readCommit(String commitID) {
+        ObjectId id = ObjectId.parse(commitID);
+        if (id == null) {
+            throw new IllegalArgumentException("No commit with that ID exists.");
+        }
+        return readCommit(id);
+    }
+    
+    /* Returns the Commit object with COMMITID, like readCommit() of its hexadecimal ID.
+     * Throws IllegalArgumentException if no such commit exists. */
+    Commit readCommit(ObjectId commitID) {
+        byte[] contents = readObjectBytes(commitID, false);
+        if (contents == null) {
+            throw new IllegalArgumentException("No commit with that ID exists.");
+        }
+        return decodeCommit(contents, null);
+    }
+    
+    /* Returns the commit serialized in CONTENTS, read from FILE if it is not null.
+     * Commits written before file contents were moved to BLOBS carry the contents themselves, which are stored as
+       blobs of this repository. */
+    Commit decodeCommit(byte[] contents, File file) {
+        Commit commit = Utils.deserialize(contents, file, Commit.class);
+        for (byte[] legacyContents : commit.legacyContents()) {
+            writeBlob(legacyContents);
+        }
+        return commit;
+    }
+    
+    /* Returns whether a commit with COMMITID exists, loose or packed. */
+    public boolean commitExists(String commitID) {
+        ObjectId id = ObjectId.parse(commitID);
+        return id != null && objectExists(id, false);
+    }
+    
+    /* Returns the contents of the blob with BLOBID.
+     * In a partial clone, blobs missing locally are fetched from PROMISOR and kept.
+     * Throws IllegalArgumentException if no such blob exists. */
+    public byte[] readBlob(String blobID) {
+        ObjectId id = ObjectId.parse(blobID);
+        byte[] contents = id == null ? null : readObjectBytes(id, true);
+        if (contents == null) {
+            throw new IllegalArgumentException("No blob with that ID exists.");
+        }
+        return contents;
+    }
+    
+    /* Returns a stream of the contents of the blob with BLOBID, which is read chunk by chunk rather than at once like
+       readBlob(), so that its size is not bounded by the heap. The stream must be closed.
+     * Throws IllegalArgumentException if no such blob exists. */
+    public InputStream openBlob(String blobID) {
+        ObjectId id = ObjectId.parse(blobID);
+        InputStream contents = id == null ? null : openObject(id, true);
+        if (contents == null) {
+            throw new IllegalArgumentException("No blob with that ID exists.");
+        }
+        return contents;
+    }
+    
+    /* Writes the contents of the blob with BLOBID into FILE through openBlob().
+     * Throws IllegalArgumentException if no such blob exists or FILE cannot be written. */
+    public void copyBlob(String blobID, File file) {
+        try (InputStream contents = openBlob(blobID); OutputStream output = Files.newOutputStream(file.toPath())) {
+            Utils.copy(contents, output, file);
+        } catch (IOException exc) {
+            throw new IllegalArgumentException(exc.getMessage());
+        }
+    }
+    
+    /* Stores the contents of FILE as a blob unless an identical blob exists already, and returns its ID.
+     * FILE is hashed while it is streamed into a temporary file, which becomes the blob. Its size is thus not
+       bounded by the heap, and the blob matches its ID even if FILE changes meanwhile. */
+    public String writeBlob(File file) {
+        try (InputStream input = Files.newInputStream(file.toPath())) {
+            return writeBlob(input, file);
+        } catch (IOException exc) {
+            throw new IllegalArgumentException(exc.getMessage());
+        }
+    }
+    
+    /* Stores the contents streamed by INPUT, read from FILE if it is not null, as a blob unless an identical blob
+       exists already, and returns its ID. INPUT is not closed. */
+    String writeBlob(InputStream input, File file) {
+        BLOBS.mkdirs();
+        File temp = null;
+        try {
+            temp = File.createTempFile("incoming-", "", COMMON);
+            String blobID;
+            try (OutputStream output = Files.newOutputStream(temp.toPath())) {
+                blobID = Utils.copy(input, output, file);
+            }
+            if (!objectExists(blobID, true)) {
+                Files.move(temp.toPath(), Utils.subFile(BLOBS, blobID).toPath(), StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+            return blobID;
+        } catch (IOException exc) {
+            throw new IllegalArgumentException(exc.getMessage());
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+    
+    /* Stores CONTENTS as a blob unless an identical blob exists already, and returns its ID. */
+    public String writeBlob(byte[] contents) {
+        String blobID = Utils.sha3(contents);
+        if (!objectExists(blobID, true)) {
+            writeObjectFile(Utils.subFile(BLOBS, blobID), contents);
+        }
+        return blobID;
+    }
+    
+    /* Returns the contents of the object with ID, or null if there is none.
+     * BLOB tells whether the object is a blob or a commit.
+     * Blobs missing from a partial clone are fetched from the repository it was cloned from and stored locally. */
+    byte[] readObjectBytes(ObjectId id, boolean blob) {
+        File looseFile = Utils.subFile(blob ? BLOBS : COMMITS, id.toHex());
+        if (Utils.exists(looseFile)) {
+            return Utils.readAsBytes(looseFile);
+        }
+        byte[] contents = searchPacks(blob, pack -> pack.read(id));
+        if (contents != null || !blob || !Utils.exists(PROMISOR)) {
+            return contents;
+        }
+        contents = promisor().readObjectBytes(id, true);
+        if (contents != null) {
+            writeObjectFile(looseFile, contents);
+        }
+        return contents;
+    }
+    
+    /* Returns a stream of the contents of the object with ID, or null if there is none. Like readObjectBytes(), but
+       the contents are read chunk by chunk as the stream is read.
+     * BLOB tells whether the object is a blob or a commit.
+     * Blobs missing from a partial clone are streamed from the repository it was cloned from into a loose object
+       first. */
+    InputStream openObject(ObjectId id, boolean blob) {
+        File looseFile = Utils.subFile(blob ? BLOBS : COMMITS, id.toHex());
+        try {
+            if (Utils.exists(looseFile)) {
+                return Files.newInputStream(looseFile.toPath());
+            }
+            InputStream packed = searchPacks(blob, pack -> pack.open(id));
+            if (packed != null || !blob || !Utils.exists(PROMISOR)) {
+                return packed;
+            }
+            try (InputStream contents = promisor().openObject(id, true)) {
+                if (contents == null) {
+                    return null;
+                }
+                writeObjectFile(looseFile, contents);
+            }
+            return Files.newInputStream(looseFile.toPath());
+        } catch (IOException exc) {
+            throw new IllegalArgumentException(exc.getMessage());
+        }
+    }
+    
+    /* Returns whether the repository stores the object with the hexadecimal ID itself, loose or packed.
+     * BLOB tells whether the object is a blob or a commit. */
+    boolean objectExists(String id, boolean blob) {
+        ObjectId parsed = ObjectId.parse(id);
+        return parsed != null && objectExists(parsed, blob);
+    }
+    
+    /* Returns whether the repository stores the object with ID itself, loose or packed.
+     * BLOB tells whether the object is a blob or a commit. */
+    boolean objectExists(ObjectId id, boolean blob) {
+        if (Utils.exists(Utils.subFile(blob ? BLOBS : COMMITS, id.toHex()))) {
+            return true;
+        }
+        return searchPacks(blob, pack -> pack.contains(id) ? pack : null) != null;
+    }
+    
+    /* Returns the first result of LOOKUP that is not null among the packs of blobs if BLOB is true, or of commits
+       otherwise, or null if there is none.
+     * Another instance or process, such as a gc packing and deleting loose objects, may have changed the packs since
+       they were opened. If none of them has a result, or one of them was deleted, they are opened again once. */
+    private <T> T searchPacks(boolean blob, Function<Pack, T> lookup) {
+        ArrayList<Pack> opened = packs();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                for (Pack pack : opened) {
+                    T result = pack.hasFlag(Pack.FLAG_BLOBS) == blob ? lookup.apply(pack) : null;
+                    if (result != null) {
+                        return result;
+                    }
+                }
+                if (attempt > 0 || !packsChanged(opened)) {
+                    return null;
+                }
+            } catch (IllegalArgumentException exc) {
+                if (attempt > 0 || !packsChanged(opened)) {
+                    throw exc;
+                }
+            }
+            forgetPacks();
+            opened = packs();
+        }
+    }
+    
+    /* Helper function of searchPacks().
+     * Returns whether the index files in PACKS differ from those of OPENED. */
+    private boolean packsChanged(ArrayList<Pack> opened) {
+        String[] names = Utils.list(PACKS);
+        HashSet<String> listed = new HashSet<>();
+        for (String name : names == null ? new String[0] : names) {
+            if (name.endsWith(Pack.INDEX_SUFFIX)) {
+                listed.add(name);
+            }
+        }
+        HashSet<String> known = new HashSet<>();
+        for (Pack pack : opened) {
+            known.add(pack.name() + Pack.INDEX_SUFFIX);
+        }
+        return !listed.equals(known);
+    }
+    
+    /* Returns the packs of the repository, opened on first use. */
+    ArrayList<Pack> packs() {
+        ArrayList<Pack> opened = packs;
+        if (opened == null) {
+            opened = Pack.openAll(PACKS);
+            packs = opened;
+        }
+        return opened;
+    }
+    
+    /* Forgets the packs opened so far, so that they are listed again on next use. */
+    void forgetPacks() {
+        packs = null;
+    }
+    
+    /* Returns the repository named in PROMISOR, opened on first use. */
+    private Repository promisor() {
+        Repository opened = promisorRepository;
+        if (opened == null) {
+            opened = new Repository(new File(Utils.readAsString(PROMISOR)).getParentFile());
+            promisorRepository = opened;
+        }
+        return opened;
+    }
+    
+    /* Returns the normalized absolute path of FILE. */
+    static String absolutePath(File file) {
+        return file.getAbsoluteFile().toPath().normalize().toString();
+    }
+    
+    /* Returns the GitPlit repository COMMON followed by the GitPlit repositories of the worktrees sharing it.
+     * Worktrees whose directory was deleted are left out. */
+    ArrayList<File> worktreeRepositories() {
+        ArrayList<File> repositories = new ArrayList<>();
+        repositories.add(COMMON);
+        File[] worktrees = Utils.listFiles(WORKTREES);
+        for (File worktree : worktrees == null ? new File[0] : worktrees) {
+            File repository = new File(Utils.readAsString(worktree));
+            if (Utils.isDirectory(repository)) {
+                repositories.add(repository);
+            }
+        }
+        return repositories;
+    }
+    
+    /* Returns the GitPlit repository, among COMMON and the worktrees sharing it, whose current branch is
+       BRANCHNAME, or null if there is none. */
+    File checkedOutIn(String branchName) {
+        for (File repository : worktreeRepositories()) {
+            if (Utils.readAsString(Utils.subFile(repository, CURRENT_BRANCH.getName())).equals(branchName)) {
+                return repository;
+            }
+        }
+        return null;
+    }
+    
+    /* Returns whether the commit with COMMITID had its parents left out by a shallow clone. */
+    public boolean isShallow(String commitID) {
+        return isShallow(ObjectId.fromHex(commitID));
+    }
+    
+    /* Returns whether the commit with COMMITID had its parents left out by a shallow clone. */
+    boolean isShallow(ObjectId commitID) {
+        HashSet<ObjectId> shallow = shallowCommits;
+        if (shallow == null) {
+            shallow = readShallow();
+            shallowCommits = shallow;
+        }
+        return shallow.contains(commitID);
+    }
+    
+    /* Returns the IDs of the commits whose parents were left out of the repository, as listed in SHALLOW. */
+    HashSet<ObjectId> readShallow() {
+        HashSet<ObjectId> shallow = new HashSet<>();
+        if (Utils.exists(SHALLOW) && !Utils.readAsString(SHALLOW).isEmpty()) {
+            for (String commitID : Utils.readAsString(SHALLOW).split("\\s+")) {
+                shallow.add(ObjectId.fromHex(commitID));
+            }
+        }
+        return shallow;
+    }
+    
+    /* Clears the addition staging area. */
+    public void clearAdditions() {
+        for (File f : Utils.listFiles(ADDITIONS)) {
+            f.delete();
+        }
+    }
+    
+    /* Clears the removal staging area. */
+    public void clearRemovals() {
+        for (File f : Utils.listFiles(REMOVALS)) {
+            f.delete();
+        }
+    }
+    
+    /* Returns the full ID of ABBREVIATEDCOMMITID.
+     * Throws IllegalArgumentException if the length of ABBREVIATEDCOMMITID is less than 6. */
+    public String fullCommitID(String abbreviatedCommitID) {
+        if (abbreviatedCommitID.length() < 6) {
+            throw new IllegalArgumentException("The length of abbreviated commit ID must be at least 6.");
+        } else if (abbreviatedCommitID.length() != 64) {
+            int length = abbreviatedCommitID.length();
+            File[] potentialMatches = Utils.listFiles(COMMITS);
+            for (File potentialMatch : potentialMatches) {
+                String abbreviatedFileName = potentialMatch.getName().substring(0, length);
+                if (abbreviatedCommitID.equals(abbreviatedFileName)) {
+                    return potentialMatch.getName();
+                }
+            }
+            for (Pack pack : packs()) {
+                ObjectId match = pack.hasFlag(Pack.FLAG_BLOBS) ? null : pack.findPrefix(abbreviatedCommitID);
+                if (match != null) {
+                    return match.toHex();
+                }
+            }
+        }
+        return abbreviatedCommitID;
+    }
+    
+    /* Returns the commit tree (history) of the repository from the head commit, following first parents.
+     * The commits are read as the iterator is advanced. In a shallow clone, the history ends at the commits whose
+       parents were left out. */
+    public Iterator<LogEntry> log() {
+        return new History(ObjectId.fromHex(Utils.readAsString(HEAD_COMMIT)), null);
+    }
+    
+    /* Returns the commits of the history of the head commit that changed the file named FILENAME from their first
+       parent, following first parents like log().
+     * The changed-path filter of each commit is read instead of the commit, which is only read and compared with
+       its first parent if the filter says it may have changed FILENAME. */
+    public Iterator<LogEntry> log(String fileName) {
+        return new History(ObjectId.fromHex(Utils.readAsString(HEAD_COMMIT)), fileName);
+    }
+    
+    /* Helper class of log().
+     * Walks the first parents from a commit, returning the commits that changed the file named FILENAME, or all of
+       them if FILENAME is null. */
+    private class History implements Iterator<LogEntry> {
+        private final String fileName;
+        /* Commit to look at next, or null at the end of the history. */
+        private ObjectId targetCommitID;
+        /* Entry returned by the next call to next(), or null if there is none. */
+        private LogEntry next;
+        
+        History(ObjectId commitID, String fileName) {
+            this.fileName = fileName;
+            targetCommitID = commitID;
+            next = advance();
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+        
+        @Override
+        public LogEntry next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            LogEntry entry = next;
+            next = advance();
+            return entry;
+        }
+        
+        /* Returns the next commit of the history to return, or null if there is none. */
+        private LogEntry advance() {
+            while (targetCommitID != null) {
+                ObjectId commitID = targetCommitID;
+                if (fileName == null) {
+                    Commit commit = readCommit(commitID);
+                    targetCommitID = isShallow(commitID) ? null : commit.parent();
+                    return new LogEntry(commitID.toHex(), commit);
+                }
+                ChangedPaths.Filter filter = ChangedPaths.read(Repository.this, commitID);
+                ObjectId parentID = filter.parentIDs.length == 0 || isShallow(commitID) ? null : filter.parentIDs[0];
+                targetCommitID = parentID;
+                if (filter.mayContain(fileName)) {
+                    Commit commit = readCommit(commitID);
+                    String blobID = commit.trackingFiles().get(fileName);
+                    String parentBlobID = parentID == null ? null : readCommit(parentID).trackingFiles().get(fileName);
+                    if (!Objects.equals(blobID, parentBlobID)) {
+                        return new LogEntry(commitID.toHex(), commit);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+    
+    /* Takes the version of the file named FILENAME as it exists in the head commit and puts it in CWD.
+     * Overwrites if the file already exists.
+     * This new/newer version of the file is not staged. */
+    public void checkoutFile(String fileName) throws IOException {
+        Lock staging = lockStaging();
+        try {
+            Commit headCommit = headCommit();
+            HashMap<String, String> trackingFilesOfHC = headCommit.trackingFiles();
+            if (trackingFilesOfHC.get(fileName) == null) {
+                throw new IllegalStateException("File does not exist in the head commit.");
+            }
+            
+            File checkedoutFile = Utils.subFile(CWD, fileName);
+            checkedoutFile.createNewFile();
+            copyBlob(trackingFilesOfHC.get(fileName), checkedoutFile);
+        } finally {
+            staging.close();
+        }
+    }
+    
+    /* Takes the version of the file named FILENAME as it exists in the commit with COMMITID and puts it in CWD.
+     * Overwrites if the file already exists.
+     * This new/newer version of the file is not staged.
+     * COMMITID can be abbreviated (must be at least 6 letters). */
+    public void checkoutFile(String fileName, String commitID) throws IOException {
+        Lock staging = lockStaging();
+        try {
+            if (!commitExists(commitID)) {
+                throw new IllegalStateException("No commit with that ID exists.");
+            }
+            
+            File checkedoutFile = Utils.subFile(CWD, fileName);
+            Commit targetCommit = readCommit(commitID);
+            HashMap<String, String> trackingFilesOfTC = targetCommit.trackingFiles();
+            if (!trackingFilesOfTC.containsKey(fileName)) {
+                throw new IllegalStateException("File does not exist in that commit.");
+            }
+            checkedoutFile.createNewFile();
+            copyBlob(trackingFilesOfTC.get(fileName), checkedoutFile);
+        } finally {
+            staging.close();
+        }
+    }
+    
+    /* Takes all files of the commit pointed by the branch BRANCHNAME and puts them in CWD.
+     * Overwrites if the files already exist, unless one of them is untracked.
+     * The referenced branch will now be considered the current branch. */
+    public void checkoutBranch(String branchName) throws IOException {
+        Lock staging = lockStaging();
+        try {
+            File targetBranchFile = Utils.subFile(BRANCHES, branchName);
+            if (!Utils.exists(targetBranchFile)) {
+                throw new IllegalStateException("No such branch exists.");
+            } else if (Utils.readAsString(CURRENT_BRANCH).equals(branchName)) {
+                throw new IllegalStateException("The system is already located at the current branch.");
+            } else if (checkedOutIn(branchName) != null) {
+                throw new IllegalStateException("That branch is checked out in another worktree.");
+            }
+            
+            Commit headCommit = headCommit();
+            HashMap<String, String> trackingFilesOfHC = headCommit.trackingFiles();
+            
+            String targetCommitID = Utils.readAsString(targetBranchFile);
+            Commit targetCommit = readCommit(targetCommitID);
+            HashMap<String, String> trackingFilesOfTC = targetCommit.trackingFiles();
+            
+            SparseCheckout sparse = sparseCheckout();
+            checkUntracked(trackingFilesOfHC, new HashSet<>(), trackingFilesOfTC, sparse);
+            for (HashMap.Entry<String, String> ent : trackingFilesOfHC.entrySet()) {
+                if (!trackingFilesOfTC.containsKey(ent.getKey()) && sparse.includes(ent.getKey())) {
+                    Utils.subFile(CWD, ent.getKey()).delete();
+                }
+            }
+            for (HashMap.Entry<String, String> ent : trackingFilesOfTC.entrySet()) {
+                if (sparse.includes(ent.getKey())) {
+                    File addOrOverwrite = Utils.subFile(CWD, ent.getKey());
+                    addOrOverwrite.createNewFile();
+                    copyBlob(ent.getValue(), addOrOverwrite);
+                }
+            }
+            
+            updateHead(targetCommitID);
+            updateCurrentBranch(branchName);
+            clearAdditions();
+            clearRemovals();
+        } finally {
+            staging.close();
+        }
+    }
+    
+    /* Helper function of checkoutBranch(), reset(), setSparseCheckout(), cherryPick() and rebase().
+     * Throws IllegalStateException if a file of CWD that is neither tracked in TRACKEDBYHEAD, the files of the head
+       commit, nor named in STAGED would be overwritten by another version of it in TRACKEDBYTARGET. Files SPARSE
+       leaves out are never written, so they are not in the way, and ignored files are overwritten as in git. */
+    private void checkUntracked(HashMap<String, String> trackedByHead, Set<String> staged,
+                                HashMap<String, String> trackedByTarget, SparseCheckout sparse) {
+        Ignore ignore = ignore();
+        for (String fileName : Utils.list(CWD)) {
+            if (trackedByHead.containsKey(fileName) || staged.contains(fileName)
+                || !trackedByTarget.containsKey(fileName) || !sparse.includes(fileName) || ignore.ignores(fileName)) {
+                continue;
+            }
+            File f = Utils.subFile(CWD, fileName);
+            if (!Utils.isDirectory(f) && !Utils.sha3(f).equals(trackedByTarget.get(fileName))) {
+                throw new IllegalStateException("There is an untracked file in the way. "
+                                                + "Delete it, or add and commit it first.");
+            }
+        }
+    }
+    
+    /* Returns the patterns of the files materialized in CWD, or null if every tracked file is. */
+    public List<String> sparseCheckoutPatterns() {
+        return sparseCheckout().patterns();
+    }
+    
+    /* Materializes in CWD only the tracked files matching PATTERNS, in the format read by SparseCheckout, or every
+       tracked file if PATTERNS is null. Checkout, reset, merge and status then leave the other files out.
+     * Files newly left out are deleted from CWD, and files newly included are written from the head commit.
+     * Nothing is changed if a file newly left out is staged or has changes, or if an untracked file would be
+       overwritten. */
+    public void setSparseCheckout(List<String> patterns) throws IOException {
+        Lock staging = lockStaging();
+        try {
+            SparseCheckout oldSparse = sparseCheckout();
+            SparseCheckout newSparse = patterns == null ? SparseCheckout.ALL : new SparseCheckout(patterns);
+            HashMap<String, String> trackingFilesOfHC = headCommit().trackingFiles();
+            HashSet<String> staged = new HashSet<>(Arrays.asList(Utils.list(ADDITIONS)));
+            staged.addAll(Arrays.asList(Utils.list(REMOVALS)));
+            ArrayList<String> leftOut = new ArrayList<>();
+            HashMap<String, String> included = new HashMap<>();
+            for (HashMap.Entry<String, String> ent : trackingFilesOfHC.entrySet()) {
+                boolean wasIncluded = oldSparse.includes(ent.getKey());
+                if (wasIncluded && !newSparse.includes(ent.getKey())) {
+                    File fileInCWD = Utils.subFile(CWD, ent.getKey());
+                    if (staged.contains(ent.getKey())
+                        || Utils.isFile(fileInCWD) && !Utils.sha3(fileInCWD).equals(ent.getValue())) {
+                        throw new IllegalStateException("You have uncommitted changes to " + ent.getKey() + ".");
+                    }
+                    leftOut.add(ent.getKey());
+                } else if (!wasIncluded && newSparse.includes(ent.getKey())) {
+                    included.put(ent.getKey(), ent.getValue());
+                }
+            }
+            checkUntracked(new HashMap<>(), staged, included, SparseCheckout.ALL);
+            
+            if (patterns == null) {
+                SPARSE_CHECKOUT.delete();
+            } else {
+                writeRef(GITPLIT, SPARSE_CHECKOUT, String.join("\n", patterns) + "\n");
+            }
+            for (String fileName : leftOut) {
+                Utils.subFile(CWD, fileName).delete();
+            }
+            for (HashMap.Entry<String, String> ent : included.entrySet()) {
+                copyBlob(ent.getValue(), Utils.subFile(CWD, ent.getKey()));
+            }
+        } finally {
+            staging.close();
+        }
+    }
+    
+    /* Returns the patterns of the files materialized in CWD, read from SPARSE_CHECKOUT. */
+    SparseCheckout sparseCheckout() {
+        return SparseCheckout.read(SPARSE_CHECKOUT);
+    }
+    
+    /* Returns the patterns of the untracked files to leave out, read from the .gitplitignore file of CWD. */
+    Ignore ignore() {
+        return Ignore.read(CWD);
+    }
+    
+    /* Returns the IDs of all commits with message MESSAGE.
+     * Does not exist in real git. */
+    public ArrayList<String> find(String message) {
+        ArrayList<String> found = new ArrayList<>();
+        File[] commitFiles = Utils.listFiles(COMMITS);
+        for (File f : commitFiles) {
+            Commit com = decodeCommit(Utils.readAsBytes(f), f);
+            if (com.message().equals(message)) {
+                found.add(f.getName());
+            }
+        }
+        for (Pack pack : packs()) {
+            for (int i = 0; i < pack.size() && !pack.hasFlag(Pack.FLAG_BLOBS); i++) {
+                Commit com = decodeCommit(pack.readAt(i), null);
+                if (com.message().equals(message)) {
+                    found.add(pack.idAt(i).toHex());
+                }
+            }
+        }
+        return found;
+    }
+    
+    /* Returns the current status of the working directory. */
+    public Status status() {
+        Status status = new Status(Utils.readAsString(CURRENT_BRANCH));
+        String[] branchNames = Utils.list(BRANCHES);
+        Arrays.sort(branchNames);
+        status.branches.addAll(Arrays.asList(branchNames));
+        
+        String[] stagedForAdditionFileNames = Utils.list(ADDITIONS);
+        String[] stagedForRemovalFileNames = Utils.list(REMOVALS);
+        Commit headCommit = headCommit();
+        HashMap<String, String> trackingFilesOfHC = headCommit.trackingFiles();
+        ArrayList<String> newlyStaged = new ArrayList<>();
+        ArrayList<String> modifiedStaged = new ArrayList<>();
+        for (String fileName : stagedForAdditionFileNames) {
+            (trackingFilesOfHC.containsKey(fileName) ? modifiedStaged : newlyStaged).add(fileName);
+        }
+        if (!newlyStaged.isEmpty()) {
+            addPairs(status, Renames.detect(commitVersion(Utils.readAsString(HEAD_COMMIT)),
+                                            Arrays.asList(stagedForRemovalFileNames), stagedVersion(), newlyStaged,
+                                            modifiedStaged));
+        }
+        Arrays.sort(stagedForAdditionFileNames);
+        status.staged.addAll(Arrays.asList(stagedForAdditionFileNames));
+        Arrays.sort(stagedForRemovalFileNames);
+        status.removed.addAll(Arrays.asList(stagedForRemovalFileNames));
+        
+        /* Files left out by the sparse checkout are not in CWD, and count as unchanged without being looked at. */
+        TreeMap<String, String> modifications = status.modifications;
+        SparseCheckout sparse = sparseCheckout();
+        for (File f : Utils.listFiles(ADDITIONS)) {
+            if (!sparse.includes(f.getName())) {
+                continue;
+            }
+            File fileInCWD = Utils.subFile(CWD, f.getName());
+            if (Utils.exists(fileInCWD) && !Utils.sameContents(f, fileInCWD)) {
+                modifications.put(f.getName(), "modified");
+            } else if (!Utils.exists(fileInCWD)) {
+                modifications.put(f.getName(), "deleted");
+            }
+        }
+        for (HashMap.Entry<String, String> ent : trackingFilesOfHC.entrySet()) {
+            if (!sparse.includes(ent.getKey())) {
+                continue;
+            }
+            File fileInCWD = Utils.subFile(CWD, ent.getKey());
+            File fileInAdditions = Utils.subFile(ADDITIONS, ent.getKey());
+            File fileInRemovals = Utils.subFile(REMOVALS, ent.getKey());
+            if (Utils.exists(fileInCWD) && !ent.getValue().equals(Utils.sha3(fileInCWD))
+                && !Utils.exists(fileInAdditions) && !Utils.exists(fileInRemovals)) {
+                modifications.put(ent.getKey(), "modified");
+            } else if (!Utils.exists(fileInCWD) && !Utils.exists(fileInRemovals)) {
+                modifications.put(ent.getKey(), "deleted");
+            }
+        }
+        
+        /* Tracked and ignored entries are skipped by name, so that directories of build outputs cost nothing. */
+        Ignore ignore = ignore();
+        ArrayList<String> untrackedFileNames = new ArrayList<>();
+        for (String fileName : Utils.list(CWD)) {
+            if (trackingFilesOfHC.containsKey(fileName) || ignore.ignores(fileName)) {
+                continue;
+            }
+            File fileInCWD = Utils.subFile(CWD, fileName);
+            File fileInAdditions = Utils.subFile(ADDITIONS, fileName);
+            if (!Utils.isDirectory(fileInCWD) && !Utils.exists(fileInAdditions)) {
+                untrackedFileNames.add(fileName);
+            }
+        }
+        ArrayList<String> deletedFileNames = new ArrayList<>();
+        for (Map.Entry<String, String> ent : modifications.entrySet()) {
+            if (ent.getValue().equals("deleted")) {
+                deletedFileNames.add(ent.getKey());
+            }
+        }
+        if (!deletedFileNames.isEmpty() && !untrackedFileNames.isEmpty()) {
+            addPairs(status, Renames.detect(stagedVersion(), deletedFileNames, workingVersion(untrackedFileNames),
+                                            untrackedFileNames, new ArrayList<>()));
+        }
+        Collections.sort(untrackedFileNames);
+        status.untracked.addAll(untrackedFileNames);
+        return status;
+    }
+    
+    /* Helper function of status().
+     * Records the renamed and copied files of PAIRS in STATUS. */
+    private static void addPairs(Status status, TreeMap<String, Renames.Pair> pairs) {
+        for (Renames.Pair pair : pairs.values()) {
+            (pair.copy ? status.copiedFrom : status.renamedFrom).put(pair.to, pair.from);
+        }
+    }
+    
+    /* Writes the changes in the working directory that are not staged yet into STREAM. */
+    public void diff(OutputStream stream) throws IOException {
+        Diff.Version staged = stagedVersion();
+        new Diff(stream).compare(staged, workingVersion(staged.names()));
+    }
+    
+    /* Writes the changes staged for the next commit into STREAM. */
+    public void diffCached(OutputStream stream) throws IOException {
+        new Diff(stream).compare(commitVersion(Utils.readAsString(HEAD_COMMIT)), stagedVersion());
+    }
+    
+    /* Writes the changes in the working directory since the commit with COMMITID into STREAM.
+     * COMMITID can be abbreviated (must be at least 6 letters). */
+    public void diff(String commitID, OutputStream stream) throws IOException {
+        if (!commitExists(commitID)) {
+            throw new IllegalStateException("No commit with that ID exists.");
+        }
+        Diff.Version committed = commitVersion(commitID);
+        HashSet<String> names = new HashSet<>(committed.names());
+        names.addAll(stagedVersion().names());
+        new Diff(stream).compare(committed, workingVersion(names));
+    }
+    
+    /* Writes the changes from the commit with COMMITID1 to the commit with COMMITID2 into STREAM.
+     * Both IDs can be abbreviated (must be at least 6 letters). */
+    public void diff(String commitID1, String commitID2, OutputStream stream) throws IOException {
+        if (!commitExists(commitID1) || !commitExists(commitID2)) {
+            throw new IllegalStateException("No commit with that ID exists.");
+        }
+        new Diff(stream).compare(commitVersion(commitID1), commitVersion(commitID2));
+    }
+    
+    /* Helper function of diff().
+     * Returns the files tracked by the commit with COMMITID. */
+    private Diff.Version commitVersion(String commitID) {
+        Diff.Version version = new Diff.Version(this);
+        for (Map.Entry<String, String> ent : readCommit(commitID).trackingFiles().entrySet()) {
+            version.putBlob(ent.getKey(), ent.getValue());
+        }
+        return version;
+    }
+    
+    /* Helper function of diff().
+     * Returns the files the next commit would track: those of the head commit, with the staging area applied. */
+    private Diff.Version stagedVersion() {
+        Diff.Version version = commitVersion(Utils.readAsString(HEAD_COMMIT));
+        for (File f : Utils.listFiles(ADDITIONS)) {
+            version.putFile(f.getName(), f);
+        }
+        for (String fileName : Utils.list(REMOVALS)) {
+            version.remove(fileName);
+        }
+        return version;
+    }
+    
+    /* Helper function of diff().
+     * Returns the files of CWD named in NAMES. Untracked files are left out, as in status(). Files left out by the
+       sparse checkout are taken from the staging area or the head commit instead, so that they show no change. */
+    private Diff.Version workingVersion(Collection<String> names) {
+        Diff.Version version = new Diff.Version(this);
+        SparseCheckout sparse = sparseCheckout();
+        HashMap<String, String> trackingFilesOfHC = null;
+        for (String fileName : names) {
+            File fileInCWD = Utils.subFile(CWD, fileName);
+            if (sparse.includes(fileName)) {
+                if (Utils.isFile(fileInCWD)) {
+                    version.putFile(fileName, fileInCWD);
+                }
+                continue;
+            }
+            File fileInAdditions = Utils.subFile(ADDITIONS, fileName);
+            trackingFilesOfHC = trackingFilesOfHC == null ? headCommit().trackingFiles() : trackingFilesOfHC;
+            if (Utils.isFile(fileInAdditions)) {
+                version.putFile(fileName, fileInAdditions);
+            } else if (trackingFilesOfHC.containsKey(fileName) && !Utils.exists(Utils.subFile(REMOVALS, fileName))) {
+                version.putBlob(fileName, trackingFilesOfHC.get(fileName));
+            }
+        }
+        return version;
+    }
+    
+    /* Writes each line of the file named FILENAME in the head commit into STREAM, after the commit that last
+       changed it. */
+    public void blame(String fileName, OutputStream stream) throws IOException {
+        blame(fileName, Utils.readAsString(HEAD_COMMIT), stream);
+    }
+    
+    /* Writes each line of the file named FILENAME in the commit with COMMITID into STREAM, after the commit that
+       last changed it.
+     * COMMITID can be abbreviated (must be at least 6 letters). */
+    public void blame(String fileName, String commitID, OutputStream stream) throws IOException {
+        if (!commitExists(commitID)) {
+            throw new IllegalStateException("No commit with that ID exists.");
+        } else if (!readCommit(commitID).trackingFiles().containsKey(fileName)) {
+            throw new IllegalStateException("File does not exist in that commit.");
+        }
+        Blame.print(this, fileName, ObjectId.fromHex(commitID), stream);
+    }
+    
+    /* Checks out all files tracked by commit with COMMITID.
+     * Removes currently-tracked files that are not present in that commit.
+     * The current branch will now point at the referenced commit.
+     * COMMITID can be abbreviated (must be at least 6 letters). */
+    public void reset(String commitID) throws IOException {
+        reset(commitID, "--hard");
+    }
+    
+    /* Points the current branch at the commit with COMMITID, then does as much as MODE asks:
+     * 1. --soft only moves the branch. The staging area and the files in CWD are left as they are.
+     * 2. --mixed also empties the staging area. The files in CWD are left as they are.
+     * 3. --hard also makes the files in CWD match that commit, in one pass over the tracked files. Only the files
+     *    that differ from that commit are written or deleted, and the commit is read only once. Nothing is changed
+     *    if an untracked file would be overwritten.
+     * COMMITID can be abbreviated (must be at least 6 letters). */
+    public void reset(String commitID, String mode) throws IOException {
+        Lock staging = lockStaging();
+        try {
+            if (!commitExists(commitID)) {
+                throw new IllegalStateException("Found no commit with that ID.");
+            } else if (!mode.equals("--soft") && !mode.equals("--mixed") && !mode.equals("--hard")) {
+                throw new IllegalStateException("Incorrect operands.");
+            }
+            HashMap<String, String> trackingFilesOfHC = null;
+            HashMap<String, String> trackingFilesOfRC = null;
+            HashSet<String> staged = null;
+            SparseCheckout sparse = sparseCheckout();
+            if (mode.equals("--hard")) {
+                trackingFilesOfHC = headCommit().trackingFiles();
+                trackingFilesOfRC = readCommit(commitID).trackingFiles();
+                staged = new HashSet<>(Arrays.asList(Utils.list(ADDITIONS)));
+                staged.addAll(Arrays.asList(Utils.list(REMOVALS)));
+                checkUntracked(trackingFilesOfHC, staged, trackingFilesOfRC, sparse);
+            }
+            compareAndSetRef(COMMON, Utils.subFile(BRANCHES, Utils.readAsString(CURRENT_BRANCH)),
+                             Utils.readAsString(HEAD_COMMIT), commitID);
+            if (mode.equals("--hard")) {
+                resetFiles(trackingFilesOfHC, staged, trackingFilesOfRC, sparse);
+            }
+            updateHead(commitID);
+            if (!mode.equals("--soft")) {
+                clearAdditions();
+                clearRemovals();
+            }
+        } finally {
+            staging.close();
+        }
+    }
+    
+    /* Helper function of reset().
+     * Makes the files in CWD tracked by the head commit, whose tracked files are TRACKINGFILESOFHC, or named in
+       STAGED match TRACKINGFILESOFRC, the files of the commit reset to.
+     * A file is only written if the head commit tracks another version of it, if it is staged, or if its contents in
+       CWD differ from that commit. Files SPARSE leaves out are neither written nor deleted. */
+    private void resetFiles(HashMap<String, String> trackingFilesOfHC, HashSet<String> staged,
+                            HashMap<String, String> trackingFilesOfRC, SparseCheckout sparse) {
+        HashSet<String> fileNames = new HashSet<>(trackingFilesOfHC.keySet());
+        fileNames.addAll(staged);
+        for (String fileName : fileNames) {
+            if (!trackingFilesOfRC.containsKey(fileName) && sparse.includes(fileName)) {
+                Utils.subFile(CWD, fileName).delete();
+            }
+        }
+        for (HashMap.Entry<String, String> ent : trackingFilesOfRC.entrySet()) {
+            if (!sparse.includes(ent.getKey())) {
+                continue;
+            }
+            File fileInCWD = Utils.subFile(CWD, ent.getKey());
+            if (!ent.getValue().equals(trackingFilesOfHC.get(ent.getKey())) || staged.contains(ent.getKey())
+                || !Utils.isFile(fileInCWD) || !Utils.sha3(fileInCWD).equals(ent.getValue())) {
+                copyBlob(ent.getValue(), fileInCWD);
+            }
+        }
+    }
+    
+    /* Returns the ID of the lowest common ancestor of two commits with COMMITID1 and COMMITID2.
+     * There are two helper functions designed to facilitate this process.
+     * Returns null if the commits have none, such as when a shallow clone left out every common ancestor or a fetched
+       history is unrelated. */
+    public String lowestCommonAncestor(String commitID1, String commitID2) {
+        ArrayList<ArrayList<ObjectId>> allCommitChains = new ArrayList<>();
+        ArrayList<ObjectId> commitChainTBA = new ArrayList<>();
+        lcaHelper_UpdateAllCommitChains(ObjectId.fromHex(commitID1), commitChainTBA, allCommitChains);
+        
+        int counter = Integer.MAX_VALUE;
+        ObjectId lowestCommonAncestorID = null;
+        for (ArrayList<ObjectId> chain: allCommitChains) {
+            ArrayList<ObjectId> possibleLCAs = new ArrayList<>();
+            lcaHelper_UpdatePossibleLCAs(ObjectId.fromHex(commitID2), chain, possibleLCAs);
+            for (ObjectId ID : possibleLCAs) {
+                if (chain.indexOf(ID) <= counter) {
+                    counter = chain.indexOf(ID);
+                    lowestCommonAncestorID = ID;
+                }
+            }
+        }
+        return lowestCommonAncestorID == null ? null : lowestCommonAncestorID.toHex();
+    }
+    
+    /* Helper function of lowestCommonAncestor().
+     * Adds all possible commit chains of the commit with COMMITID1 to ALLCOMMITCHAINS. */
+    private void lcaHelper_UpdateAllCommitChains(ObjectId commitID1, ArrayList<ObjectId> commitChain,
+                                                 ArrayList<ArrayList<ObjectId>> allCommitChains) {
+        Commit current;
+        while (commitID1 != null) {
+            commitChain.add(commitID1);
+            if (isShallow(commitID1)) {
+                break;
+            }
+            current = readCommit(commitID1);
+            if (current.hasSecondParent()) {
+                lcaHelper_UpdateAllCommitChains(current.secondParent(), new ArrayList<>(commitChain),
+                                                allCommitChains);
+            }
+            commitID1 = current.parent();
+        }
+        allCommitChains.add(commitChain);
+    }
+    
+    /* Helper function of lowestCommonAncestor().
+     * Adds the ID of all common ancestors located in CHAIN to POSSIBLELCAS. */
+    private void lcaHelper_UpdatePossibleLCAs(ObjectId commitID2, ArrayList<ObjectId> chain,
+                                              ArrayList<ObjectId> possibleLCAs) {
+        Commit current;
+        while (commitID2 != null && !chain.contains(commitID2)) {
+            if (isShallow(commitID2)) {
+                return;
+            }
+            current = readCommit(commitID2);
+            if (current.hasSecondParent()) {
+                lcaHelper_UpdatePossibleLCAs(current.secondParent(), chain, possibleLCAs);
+            }
+            commitID2 = current.parent();
+        }
+        if (commitID2 != null) {
+            possibleLCAs.add(commitID2);
+        }
+    }
+    
+    /* Helper function of mergeBranch() and rebase().
+     * Returns the exception refusing to combine the commits with COMMITID1 and COMMITID2, which have no common
+       ancestor. */
+    private IllegalStateException noCommonAncestor(String commitID1, String commitID2) {
+        if (reachesShallow(ObjectId.fromHex(commitID1)) || reachesShallow(ObjectId.fromHex(commitID2))) {
+            return new IllegalStateException("The common ancestor of the branches was left out by a shallow clone.");
+        }
+        return new IllegalStateException("The branches have no common ancestor.");
+    }
+    
+    /* Helper function of noCommonAncestor().
+     * Returns whether the history of the commit with COMMITID ends at a commit whose parents were left out by a
+       shallow clone. */
+    private boolean reachesShallow(ObjectId commitID) {
+        HashSet<ObjectId> shallow = readShallow();
+        if (shallow.isEmpty()) {
+            return false;
+        }
+        HashSet<ObjectId> visited = new HashSet<>();
+        ArrayDeque<ObjectId> toVisit = new ArrayDeque<>();
+        toVisit.add(commitID);
+        while (!toVisit.isEmpty()) {
+            ObjectId current = toVisit.poll();
+            if (shallow.contains(current)) {
+                return true;
+            } else if (!visited.add(current)) {
+                continue;
+            }
+            Commit commit = readCommit(current);
+            for (ObjectId parentID : new ObjectId[] {commit.parent(), commit.secondParent()}) {
+                if (parentID != null) {
+                    toVisit.add(parentID);
+                }
+            }
+        }
+        return false;
+    }
+    
+    /* Merges files from the branch BRANCHNAME into the current branch, and returns the outcome.
+     * If the file contents of BRANCHNAME and the current branch are different from each other,
+       calls mergeConflict() and updates the file to include the contents of both.
+     * Unlike real git, merge conflicts do not have to be resolved: the changes will be
+       shown in the updated file. */
+    public MergeResult merge(String branchName) throws IOException {
+        Lock staging = lockStaging();
+        try {
+            return mergeBranch(branchName);
+        } finally {
+            staging.close();
+        }
+    }
+    
+    /* Helper function of merge(). */
+    private MergeResult mergeBranch(String branchName) throws IOException {
+        if (Utils.list(ADDITIONS).length != 0 || Utils.list(REMOVALS).length != 0) {
+            throw new IllegalStateException("You have uncommitted changes.");
+        } else if (!Utils.exists(Utils.subFile(BRANCHES, branchName))) {
+            throw new IllegalStateException("A branch with that name does not exist.");
+        } else if (Utils.readAsString(CURRENT_BRANCH).equals(branchName)) {
+            throw new IllegalStateException("Cannot merge a branch with itself.");
+        }
+        String idOfCurrentBranch = Utils.readAsString(HEAD_COMMIT);
+        String idOfProvidedBranch = Utils.readAsString(Utils.subFile(BRANCHES, branchName));
+        String idOfLCA = lowestCommonAncestor(idOfCurrentBranch, idOfProvidedBranch);
+        if (idOfLCA == null) {
+            throw noCommonAncestor(idOfCurrentBranch, idOfProvidedBranch);
+        } else if (idOfProvidedBranch.equals(idOfLCA)) {
+            return new MergeResult(null, false, new ArrayList<>());
+        } else if (idOfCurrentBranch.equals(idOfLCA)) {
+            return new MergeResult(null, true, new ArrayList<>());
+        }
+        
+        Commit commitOfCB = readCommit(idOfCurrentBranch);
+        Commit commitOfPB = readCommit(idOfProvidedBranch);
+        Commit lca = readCommit(idOfLCA);
+        HashMap<String, String> tfOfCB = commitOfCB.trackingFiles();
+        HashMap<String, String> tfOfPB = commitOfPB.trackingFiles();
+        HashMap<String, String> tfOfLCA = lca.trackingFiles();
+        SparseCheckout sparse = sparseCheckout();
+        Ignore ignore = ignore();
+        String[] CWDFileNames = Utils.list(CWD);
+        for (String fileName : CWDFileNames) {
+            if (!tfOfCB.containsKey(fileName)
+                    && tfOfPB.containsKey(fileName) && sparse.includes(fileName) && !ignore.ignores(fileName)) {
+                throw new IllegalStateException("There is an untracked file in the way. "
+                                                + "Delete it, or add and commit it first.");
+            }
+        }
+        
+        /* A file renamed on one side is merged under its new name, where the other side's version and the ancestor
+           version are moved as well. A file both sides renamed to the same name only has its ancestor moved. */
+        HashMap<String, String> renamesOfCB = renamesSince(idOfLCA, idOfCurrentBranch);
+        HashMap<String, String> renamesOfPB = renamesSince(idOfLCA, idOfProvidedBranch);
+        HashMap<String, String> movesInCWD = new HashMap<>();
+        for (HashMap.Entry<String, String> ent : renamesOfCB.entrySet()) {
+            String newNameInPB = renamesOfPB.get(ent.getKey());
+            if (ent.getValue().equals(newNameInPB)) {
+                tfOfLCA.put(ent.getValue(), tfOfLCA.remove(ent.getKey()));
+            } else if (newNameInPB == null && tfOfPB.containsKey(ent.getKey())
+                       && !tfOfPB.containsKey(ent.getValue())) {
+                tfOfLCA.put(ent.getValue(), tfOfLCA.remove(ent.getKey()));
+                tfOfPB.put(ent.getValue(), tfOfPB.remove(ent.getKey()));
+            }
+        }
+        for (HashMap.Entry<String, String> ent : renamesOfPB.entrySet()) {
+            if (!renamesOfCB.containsKey(ent.getKey()) && tfOfCB.containsKey(ent.getKey())
+                && !tfOfCB.containsKey(ent.getValue())) {
+                tfOfLCA.put(ent.getValue(), tfOfLCA.remove(ent.getKey()));
+                tfOfCB.put(ent.getValue(), tfOfCB.remove(ent.getKey()));
+                movesInCWD.put(ent.getKey(), ent.getValue());
+            }
+        }
+        
+        ArrayList<String> conflicts = new ArrayList<>();
+        ArrayList<String> removeListTFCB = new ArrayList<String>();
+        ArrayList<String> removeListTFPB = new ArrayList<String>();
+        for (HashMap.Entry<String, String> ent : tfOfCB.entrySet()) {
+            if (tfOfPB.containsKey(ent.getKey()) && tfOfLCA.containsKey(ent.getKey())) {
+                String fileContentPB = tfOfPB.get(ent.getKey());
+                String fileContentLCA = tfOfLCA.get(ent.getKey());
+                if (ent.getValue().equals(fileContentLCA) && !ent.getValue().equals(fileContentPB)) {
+                    stageBlob(ent.getKey(), fileContentPB, sparse);
+                    removeListTFCB.add(ent.getKey());
+                    removeListTFPB.add(ent.getKey());
+                } else if (!ent.getValue().equals(fileContentPB)
+                           && !ent.getValue().equals(fileContentLCA)
+                           && !fileContentPB.equals(fileContentLCA)) {
+                    mergeConflict(ent.getKey(), Utils.byteToString(readBlob(ent.getValue())),
+                                  Utils.byteToString(readBlob(fileContentPB)), conflicts, sparse);
+                    removeListTFCB.add(ent.getKey());
+                    removeListTFPB.add(ent.getKey());
+                }
+            } else if (tfOfPB.containsKey(ent.getKey()) && !tfOfLCA.containsKey(ent.getKey())) {
+                if (!ent.getValue().equals(tfOfPB.get(ent.getKey()))) {
+                    mergeConflict(ent.getKey(), Utils.byteToString(readBlob(ent.getValue())),
+                                  Utils.byteToString(readBlob(tfOfPB.get(ent.getKey()))), conflicts, sparse);
+                    removeListTFCB.add(ent.getKey());
+                    removeListTFPB.add(ent.getKey());
+                }
+            } else if (!tfOfPB.containsKey(ent.getKey()) && tfOfLCA.containsKey(ent.getKey())) {
+                if (ent.getValue().equals(tfOfLCA.get(ent.getKey()))) {
+                    stageRemoval(ent.getKey());
+                    removeListTFCB.add(ent.getKey());
+                } else {
+                    mergeConflict(ent.getKey(), Utils.byteToString(readBlob(ent.getValue())), "", conflicts,
+                                  sparse);
+                    removeListTFCB.add(ent.getKey());
+                }
+            }
+        }
+        for (String fileName : removeListTFCB) {
+            tfOfCB.remove(fileName);
+        }
+        for (String fileName : removeListTFPB) {
+            tfOfPB.remove(fileName);
+        }
+        for (HashMap.Entry<String, String> ent : tfOfPB.entrySet()) {
+            if (!tfOfCB.containsKey(ent.getKey()) && tfOfLCA.containsKey(ent.getKey())
+                && !ent.getValue().equals(tfOfLCA.get(ent.getKey()))) {
+                mergeConflict(ent.getKey(), "", Utils.byteToString(readBlob(tfOfPB.get(ent.getKey()))), conflicts,
+                              sparse);
+            } else if (!tfOfCB.containsKey(ent.getKey()) && !tfOfLCA.containsKey(ent.getKey())) {
+                stageBlob(ent.getKey(), ent.getValue(), sparse);
+            }
+        }
+        for (HashMap.Entry<String, String> ent : movesInCWD.entrySet()) {
+            if (!Utils.exists(Utils.subFile(ADDITIONS, ent.getValue()))) {
+                stageBlob(ent.getValue(), tfOfCB.get(ent.getValue()), sparse);
+            }
+            stageRemoval(ent.getKey());
+        }
+        
+        String message = "Merged " + branchName + " into " + Utils.readAsString(CURRENT_BRANCH) + ".";
+        String commitID = addCommit(new Commit(message, Utils.getCurrentTime(), this), idOfProvidedBranch);
+        return new MergeResult(commitID, false, conflicts);
+    }
+    
+    /* Helper function of merge().
+     * Returns the new name of each file renamed from the commit with BASEID to the commit with COMMITID. */
+    private HashMap<String, String> renamesSince(String baseID, String commitID) {
+        Diff.Version base = commitVersion(baseID);
+        Diff.Version commit = commitVersion(commitID);
+        ArrayList<String> removed = new ArrayList<>();
+        ArrayList<String> added = new ArrayList<>();
+        for (String fileName : base.names()) {
+            if (!commit.contains(fileName)) {
+                removed.add(fileName);
+            }
+        }
+        for (String fileName : commit.names()) {
+            if (!base.contains(fileName)) {
+                added.add(fileName);
+            }
+        }
+        HashMap<String, String> renames = new HashMap<>();
+        for (Renames.Pair pair : Renames.detect(base, removed, commit, added, new ArrayList<>()).values()) {
+            if (!pair.copy) {
+                renames.put(pair.from, pair.to);
+            }
+        }
+        return renames;
+    }
+    
+    /* Helper function of merge().
+     * Stages the blob with BLOBID as the file named FILENAME, which is written in CWD unless SPARSE leaves it out. */
+    private void stageBlob(String fileName, String blobID, SparseCheckout sparse) throws IOException {
+        if (sparse.includes(fileName)) {
+            copyBlob(blobID, Utils.subFile(CWD, fileName));
+            stageAddition(fileName);
+        } else {
+            Utils.subFile(REMOVALS, fileName).delete();
+            copyBlob(blobID, Utils.subFile(ADDITIONS, fileName));
+        }
+    }
+    
+    /* Helper function of merge(), which addresses merge conflicts.
+     * Updates the file with FILENAME to include its contents from both the branch BRANCHNAME
+       and the current branch, stages it and adds it to CONFLICTS.
+     * A file SPARSE leaves out is only written in the staging area. */
+    private void mergeConflict(String fileName, String fileContentsOfCB, String fileContentsOfPB,
+                               ArrayList<String> conflicts, SparseCheckout sparse) throws IOException {
+        File updatedFile = Utils.subFile(sparse.includes(fileName) ? CWD : ADDITIONS, fileName);
+        updatedFile.createNewFile();
+        Utils.writeContents(updatedFile, conflictContents(fileName, fileContentsOfCB, fileContentsOfPB));
+        if (sparse.includes(fileName)) {
+            stageAddition(fileName);
+        } else {
+            Utils.subFile(REMOVALS, fileName).delete();
+        }
+        conflicts.add(fileName);
+    }
+    
+    /* Helper function of mergeConflict() and Replay.
+     * Returns the contents of the file named FILENAME holding both FILECONTENTSOFCB, its contents on the current
+       branch, and FILECONTENTSOFPB, its contents on the other side. Either is empty if the file does not exist. */
+    static String conflictContents(String fileName, String fileContentsOfCB, String fileContentsOfPB) {
+        if (!fileContentsOfCB.equals("")) {
+            fileContentsOfCB = fileContentsOfCB.replaceAll("\\s+$", "") + "\r\n";
+        } else if (!fileContentsOfPB.equals("")) {
+            fileContentsOfPB = fileContentsOfPB.replaceAll("\\s+$", "") + "\r\n";
+        }
+        return "<<<<<<< HEAD: " + fileName + "\r\n" + fileContentsOfCB + "======="
+               + "\r\n" + fileContentsOfPB + ">>>>>>>" + "\r\n";
+    }
+    
+    /* Applies the changes the commit with COMMITID made to its first parent on top of the head commit, as a new
+       commit with the same message, and returns the outcome.
+     * The changes are merged in memory by Replay, so that only the new commit is written and only the files of CWD
+       it changes are rewritten. A file changed differently on both sides gets the contents of both, as in merge().
+     * Throws IllegalStateException if something is staged, no such commit exists, or the head commit already has
+       all of its changes. */
+    public ReplayResult cherryPick(String commitID) throws IOException {
+        Lock staging = lockStaging();
+        try {
+            if (Utils.list(ADDITIONS).length != 0 || Utils.list(REMOVALS).length != 0) {
+                throw new IllegalStateException("You have uncommitted changes.");
+            } else if (!commitExists(commitID)) {
+                throw new IllegalStateException("No commit with that ID exists.");
+            } else if (isShallow(commitID)) {
+                throw new IllegalStateException("The parent of that commit was left out by a shallow clone.");
+            }
+            String headID = Utils.readAsString(HEAD_COMMIT);
+            HashMap<String, String> headTree = readCommit(headID).trackingFiles();
+            Commit picked = readCommit(commitID);
+            HashMap<String, String> base = picked.parentID() == null ? new HashMap<>()
+                                                                      : readCommit(picked.parent()).trackingFiles();
+            Replay replay = new Replay(this, headID, headTree);
+            if (replay.apply(picked, base, picked.message()) == null) {
+                throw new IllegalStateException("No changes added to the commit.");
+            }
+            return finishReplay(headID, headTree, replay);
+        } finally {
+            staging.close();
+        }
+    }
+    
+    /* Replays the commits of the current branch since it forked from the branch BRANCHNAME on top of BRANCHNAME,
+       and returns the outcome. The current branch then points at the last replayed commit.
+     * The commits are found by following first parents from the head commit, and replayed oldest first by Replay,
+       entirely in memory: only the new commits are written, and CWD is updated once at the end, from the head
+       commit to the last new commit. A commit whose changes BRANCHNAME already has is dropped, and a merge commit
+       is replayed as the changes it made to its first parent. A file changed differently on both sides gets the
+       contents of both, as in merge().
+     * If the current branch has no commit of its own, it is moved to BRANCHNAME.
+     * Throws IllegalStateException if something is staged, BRANCHNAME does not exist or is the current branch, or
+       the current branch merged BRANCHNAME since they forked. */
+    public ReplayResult rebase(String branchName) throws IOException {
+        Lock staging = lockStaging();
+        try {
+            if (Utils.list(ADDITIONS).length != 0 || Utils.list(REMOVALS).length != 0) {
+                throw new IllegalStateException("You have uncommitted changes.");
+            } else if (!Utils.exists(Utils.subFile(BRANCHES, branchName))) {
+                throw new IllegalStateException("A branch with that name does not exist.");
+            } else if (Utils.readAsString(CURRENT_BRANCH).equals(branchName)) {
+                throw new IllegalStateException("Cannot rebase a branch onto itself.");
+            }
+            String headID = Utils.readAsString(HEAD_COMMIT);
+            String ontoID = Utils.readAsString(Utils.subFile(BRANCHES, branchName));
+            String forkID = lowestCommonAncestor(headID, ontoID);
+            if (forkID == null) {
+                throw noCommonAncestor(headID, ontoID);
+            } else if (forkID.equals(ontoID)) {
+                return new ReplayResult(null, 0, 0, new ArrayList<>());
+            }
+            
+            /* Commits to replay, newest first. */
+            ArrayList<Commit> replayed = new ArrayList<>();
+            ObjectId fork = ObjectId.fromHex(forkID);
+            for (ObjectId commitID = ObjectId.fromHex(headID); !commitID.equals(fork); ) {
+                Commit commit = readCommit(commitID);
+                replayed.add(commit);
+                commitID = isShallow(commitID) ? null : commit.parent();
+                if (commitID == null) {
+                    throw new IllegalStateException("The current branch merged " + branchName + " since they "
+                                                    + "forked. Merge it instead.");
+                }
+            }
+            Replay replay = new Replay(this, ontoID, readCommit(ontoID).trackingFiles());
+            HashMap<String, String> base = readCommit(fork).trackingFiles();
+            for (int i = replayed.size() - 1; i >= 0; i--) {
+                Commit commit = replayed.get(i);
+                replay.apply(commit, base, commit.message());
+                base = commit.trackingFiles();
+            }
+            HashMap<String, String> headTree = replayed.isEmpty() ? readCommit(headID).trackingFiles()
+                                                                  : replayed.get(0).trackingFiles();
+            return finishReplay(headID, headTree, replay);
+        } finally {
+            staging.close();
+        }
+    }
+    
+    /* Helper function of cherryPick() and rebase().
+     * Moves the current branch and the head commit from HEADID, which tracks HEADTREE, to the head of REPLAY, then
+       rewrites the files of CWD that differ between the two and leaves the others as they are.
+     * Throws IllegalStateException if an untracked file would be overwritten. */
+    private ReplayResult finishReplay(String headID, HashMap<String, String> headTree, Replay replay) {
+        HashMap<String, String> tree = replay.tree();
+        SparseCheckout sparse = sparseCheckout();
+        checkUntracked(headTree, new HashSet<>(), tree, sparse);
+        compareAndSetRef(COMMON, Utils.subFile(BRANCHES, Utils.readAsString(CURRENT_BRANCH)), headID, replay.head());
+        compareAndSetRef(GITPLIT, HEAD_COMMIT, headID, replay.head());
+        for (HashMap.Entry<String, String> ent : headTree.entrySet()) {
+            if (!tree.containsKey(ent.getKey()) && sparse.includes(ent.getKey())) {
+                Utils.subFile(CWD, ent.getKey()).delete();
+            }
+        }
+        for (HashMap.Entry<String, String> ent : tree.entrySet()) {
+            if (!ent.getValue().equals(headTree.get(ent.getKey())) && sparse.includes(ent.getKey())) {
+                copyBlob(ent.getValue(), Utils.subFile(CWD, ent.getKey()));
+            }
+        }
+        return new ReplayResult(replay.head(), replay.commits(), replay.dropped(), replay.conflicts());
+    }
+    
+    /* Deletes unreachable objects, consolidates the reachable ones into packs, and returns how many of each.
+     * An object is reachable if a branch or the head commit leads to it, either to the commit itself or to a commit
+       tracking the blob. Unreachable objects are only deleted once they are older than GRACEDAYS days, so that
+       objects still being used by another command are kept.
+     * By default only loose objects are looked at: the walk stops at commits of closed packs, whose ancestors
+       and blobs are all packed already. With FULL, or once there are more than GC_MAX_PACKS packs, all packs are
+       rewritten too. Unreachable objects of packs younger than GRACEDAYS are then written back as loose objects.
+     * Packs hold at most GC_MAX_PACK_OBJECTS objects each, which bounds the memory used for their indexes.
+       Objects larger than Pack.MAX_OBJECT_SIZE stay loose. Since the incremental walk does not see the blobs of
+       packed commits, they are only pruned by a full gc.
+     * New packs are only closed if every reachable object was packed or already is in a closed pack. Otherwise, such
+       as when a partial clone misses blobs or the walk goes through imported packs, the next gc walks through them.
+     * Objects are streamed into packs, so that their size is not bounded by the heap.
+     * Only one gc runs at a time. Other commands are not blocked. */
+    public GcResult gc(boolean full, int graceDays) throws IOException {
+        Lock gcLock = lock(COMMON, GC);
+        try {
+            return collect(full, graceDays);
+        } finally {
+            gcLock.close();
+        }
+    }
+    
+    /* Helper function of gc(). */
+    private GcResult collect(boolean full, int graceDays) throws IOException {
+        File[] worktrees = Utils.listFiles(WORKTREES);
+        for (File worktree : worktrees == null ? new File[0] : worktrees) {
+            if (!Utils.isDirectory(new File(Utils.readAsString(worktree)))) {
+                worktree.delete();
+            }
+        }
+        full = full || packs().size() > GC_MAX_PACKS;
+        long expiry = System.currentTimeMillis() - graceDays * 24L * 60 * 60 * 1000;
+        HashSet<ObjectId> reachable = markReachable(full);
+        
+        ArrayList<Pack> oldPacks = full ? new ArrayList<>(packs()) : new ArrayList<>();
+        ArrayList<File> packedFiles = new ArrayList<>();
+        ArrayList<Pack.Writer> blobWriters = new ArrayList<>();
+        ArrayList<Pack.Writer> commitWriters = new ArrayList<>();
+        /* Reachable objects packed by this gc, or left loose for their size. */
+        HashSet<ObjectId> stored = new HashSet<>();
+        int pruned = 0;
+        for (File dir : new File[] {BLOBS, COMMITS}) {
+            File[] looseFiles = Utils.listFiles(dir);
+            if (looseFiles == null) {
+                continue;
+            }
+            ArrayList<Pack.Writer> writers = dir == BLOBS ? blobWriters : commitWriters;
+            for (File f : looseFiles) {
+                ObjectId id = ObjectId.parse(f.getName());
+                boolean isReachable = id != null && reachable.contains(id);
+                if (f.length() > Pack.MAX_OBJECT_SIZE && (isReachable || !full)) {
+                    if (isReachable) {
+                        stored.add(id);
+                    }
+                } else if (isReachable) {
+                    try (InputStream contents = Files.newInputStream(f.toPath())) {
+                        gcWriter(writers, dir == BLOBS).add(id, contents);
+                    }
+                    stored.add(id);
+                    packedFiles.add(f);
+                } else if (f.lastModified() < expiry) {
+                    f.delete();
+                    pruned++;
+                }
+            }
+        }
+        for (Pack pack : oldPacks) {
+            boolean blob = pack.hasFlag(Pack.FLAG_BLOBS);
+            for (int i = 0; i < pack.size(); i++) {
+                ObjectId id = pack.idAt(i);
+                if (reachable.contains(id)) {
+                    try (InputStream contents = pack.openAt(i)) {
+                        gcWriter(blob ? blobWriters : commitWriters, blob).add(id, contents);
+                    }
+                    stored.add(id);
+                } else if (pack.lastModified() >= expiry) {
+                    File loosened = Utils.subFile(blob ? BLOBS : COMMITS, id.toHex());
+                    if (!Utils.exists(loosened)) {
+                        try (InputStream contents = pack.openAt(i)) {
+                            writeObjectFile(loosened, contents);
+                        }
+                        loosened.setLastModified(pack.lastModified());
+                    }
+                } else {
+                    pruned++;
+                }
+            }
+        }
+        
+        boolean closed = true;
+        for (ObjectId id : reachable) {
+            if (!stored.contains(id) && !inClosedPack(id)) {
+                closed = false;
+                break;
+            }
+        }
+        if (!closed) {
+            for (Pack.Writer writer : blobWriters) {
+                writer.clearFlag(Pack.FLAG_CLOSED);
+            }
+            for (Pack.Writer writer : commitWriters) {
+                writer.clearFlag(Pack.FLAG_CLOSED);
+            }
+        }
+        
+        /* Blob packs are finished first so that a closed commit pack never exists without the blobs. */
+        int packed = 0;
+        HashSet<String> newPacks = new HashSet<>();
+        for (Pack.Writer writer : blobWriters) {
+            packed += writer.size();
+            newPacks.add(writer.finish().name());
+        }
+        for (Pack.Writer writer : commitWriters) {
+            packed += writer.size();
+            newPacks.add(writer.finish().name());
+        }
+        for (File f : packedFiles) {
+            f.delete();
+        }
+        /* Packs are named after the objects they hold, so an old pack rewritten with the same objects was replaced by
+           the new one, which must be kept. */
+        for (Pack pack : oldPacks) {
+            if (!newPacks.contains(pack.name())) {
+                pack.delete();
+            }
+        }
+        forgetPacks();
+        /* Cached blames may name the pruned commits, and the filters of pruned commits are of no use. */
+        if (pruned > 0 && Utils.exists(BLAME)) {
+            for (File f : Utils.listFiles(BLAME)) {
+                f.delete();
+            }
+        }
+        if (pruned > 0 && Utils.exists(CHANGED_PATHS)) {
+            for (File f : Utils.listFiles(CHANGED_PATHS)) {
+                if (!f.getName().startsWith("incoming-") && !commitExists(f.getName())) {
+                    f.delete();
+                }
+            }
+        }
+        return new GcResult(packed, pruned);
+    }
+    
+    /* Helper function of gc().
+     * Returns the last writer of WRITERS, or a new one if it is full or there is none yet.
+     * BLOB tells whether the writers pack blobs or commits. */
+    private Pack.Writer gcWriter(ArrayList<Pack.Writer> writers, boolean blob) throws IOException {
+        if (writers.isEmpty() || writers.get(writers.size() - 1).size() >= GC_MAX_PACK_OBJECTS) {
+            writers.add(new Pack.Writer(PACKS, Pack.FLAG_CLOSED | (blob ? Pack.FLAG_BLOBS : 0)));
+        }
+        return writers.get(writers.size() - 1);
+    }
+    
+    /* Helper function of gc().
+     * Returns the IDs of all commits reachable from the branches and the head commits of the repository and its
+       worktrees, and of their blobs.
+     * Unless FULL, commits of closed packs are not walked through, and only the loose reachable commits, their
+       blobs and the packed commits they lead to are returned.
+     * The walk stops at the commits whose parents were left out by a shallow clone. */
+    private HashSet<ObjectId> markReachable(boolean full) {
+        ArrayList<String> heads = new ArrayList<>();
+        for (File branch : Utils.listFiles(BRANCHES)) {
+            heads.add(Utils.readAsString(branch));
+        }
+        for (File repository : worktreeRepositories()) {
+            heads.add(Utils.readAsString(Utils.subFile(repository, HEAD_COMMIT.getName())));
+        }
+        ArrayDeque<ObjectId> toVisit = new ArrayDeque<>();
+        for (String head : heads) {
+            if (!head.isEmpty()) {
+                toVisit.push(ObjectId.fromHex(head));
+            }
+        }
+        
+        HashSet<ObjectId> reachable = new HashSet<>();
+        while (!toVisit.isEmpty()) {
+            ObjectId commitID = toVisit.pop();
+            if (!reachable.add(commitID)) {
+                continue;
+            } else if (!full && inClosedPack(commitID)) {
+                continue;
+            }
+            Commit current = readCommit(commitID);
+            for (String blobID : current.trackingFiles().values()) {
+                reachable.add(ObjectId.fromHex(blobID));
+            }
+            if (isShallow(commitID)) {
+                continue;
+            }
+            if (current.parentID() != null) {
+                toVisit.push(current.parent());
+            }
+            if (current.hasSecondParent()) {
+                toVisit.push(current.secondParent());
+            }
+        }
+        return reachable;
+    }
+    
+    /* Helper function of collect() and markReachable().
+     * Returns whether a closed pack holds the object with ID. */
+    private boolean inClosedPack(ObjectId id) {
+        for (Pack pack : packs()) {
+            if (pack.hasFlag(Pack.FLAG_CLOSED) && pack.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /* Fetches the branch REMOTEBRANCH of the GitPlit repository REMOTE into the branch LOCALBRANCH, and returns what
+       was transferred, or null if LOCALBRANCH already pointed at the same commit.
+     * Only the commits and blobs missing locally are transferred. LOCALBRANCH is created if it does not exist, and
+       must otherwise be an ancestor of REMOTEBRANCH. It cannot be the current branch of this repository or of one
+       of its worktrees: fetch into another branch and merge it instead. */
+    public TransferResult fetch(Repository remote, String remoteBranch, String localBranch) throws IOException {
+        if (checkedOutIn(localBranch) != null) {
+            throw new IllegalStateException("Cannot fetch into a checked out branch. Fetch into another branch and "
+                                            + "merge it.");
+        }
+        return transfer(remote, remoteBranch, this, localBranch);
+    }
+    
+    /* Pushes the branch LOCALBRANCH into the branch REMOTEBRANCH of the GitPlit repository REMOTE, and returns what
+       was transferred, or null if REMOTEBRANCH already pointed at the same commit.
+     * Only the commits and blobs missing remotely are transferred. REMOTEBRANCH is created if it does not exist,
+       and must otherwise be an ancestor of LOCALBRANCH. It cannot be the current branch of that repository or of one
+       of its worktrees. */
+    public TransferResult push(Repository remote, String localBranch, String remoteBranch) throws IOException {
+        if (remote.checkedOutIn(remoteBranch) != null) {
+            throw new IllegalStateException("Cannot push into a checked out branch of that repository.");
+        }
+        return transfer(this, localBranch, remote, remoteBranch);
+    }
+    
+    /* Imports the commits, blobs and branches described by STREAM, in the format read by FastImport, and returns
+       what was imported.
+     * Objects are written into new packs, one batch at a time, and the branches are only updated at the end. None
+       of them can be checked out in this repository or one of its worktrees.
+     * Throws IllegalStateException if STREAM is malformed. */
+    public ImportResult fastImport(InputStream stream) throws IOException {
+        return new FastImport(this, stream).run();
+    }
+    
+    /* Helper function of fetch() and push().
+     * Copies the commits SOURCEBRANCH of the GitPlit repository SOURCE leads to, and their blobs, into the GitPlit
+       repository TARGET, then points TARGETBRANCH of TARGET at the same commit.
+     * The missing objects are found by negotiate() and streamed from SOURCE to TARGET as one bundle, which TARGET
+       stores as new packs. */
+    private static TransferResult transfer(Repository source, String sourceBranch, Repository target,
+                                           String targetBranch) throws IOException {
+        File sourceBranchFile = Utils.subFile(source.BRANCHES, sourceBranch);
+        File targetBranchFile = Utils.subFile(target.BRANCHES, targetBranch);
+        if (!Utils.exists(sourceBranchFile)) {
+            throw new IllegalStateException("A branch with that name does not exist.");
+        }
+        String want = Utils.readAsString(sourceBranchFile);
+        String old = Utils.exists(targetBranchFile) ? Utils.readAsString(targetBranchFile) : null;
+        if (want.equals(old)) {
+            return null;
+        } else if (old != null && !source.isAncestor(ObjectId.fromHex(old), ObjectId.fromHex(want))) {
+            throw new IllegalStateException("Rejected: " + targetBranch + " has commits that " + sourceBranch
+                                            + " does not have.");
+        }
+        
+        HashSet<ObjectId> shallowInSource = source.readShallow();
+        ArrayList<ObjectId> missing = negotiate(source, ObjectId.fromHex(want), target, shallowInSource);
+        PipedOutputStream sent = new PipedOutputStream();
+        PipedInputStream received = new PipedInputStream(sent, 1 << 16);
+        IOException[] sendFailure = new IOException[1];
+        long[] sentBytes = new long[1];
+        Thread sender = new Thread(() -> {
+            try {
+                Bundle.Writer bundle = new Bundle.Writer(sent);
+                writeBundle(bundle, source, target, missing, shallowInSource);
+                sentBytes[0] = bundle.bytes();
+                bundle.finish();
+            } catch (IOException exc) {
+                sendFailure[0] = exc;
+            } finally {
+                try {
+                    sent.close();
+                } catch (IOException exc) {
+                    sendFailure[0] = exc;
+                }
+            }
+        });
+        sender.start();
+        int[] counts;
+        try {
+            counts = Bundle.unbundle(received, target);
+        } finally {
+            received.close();
+            try {
+                sender.join();
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (sendFailure[0] != null) {
+            throw sendFailure[0];
+        }
+        target.forgetPacks();
+        
+        StringBuilder newShallow = new StringBuilder();
+        for (ObjectId commitID : missing) {
+            if (shallowInSource.contains(commitID)) {
+                newShallow.append(commitID).append("\n");
+            }
+        }
+        if (newShallow.length() != 0) {
+            try (Lock lock = lock(target.COMMON, target.SHALLOW)) {
+                String existing = Utils.exists(target.SHALLOW) ? Utils.readAsString(target.SHALLOW) : "";
+                lock.commit(existing + newShallow);
+            }
+            target.shallowCommits = null;
+        }
+        compareAndSetRef(target.COMMON, targetBranchFile, old, want);
+        return new TransferResult(counts[0], counts[1], sentBytes[0]);
+    }
+    
+    /* Helper function of transfer().
+     * Returns the commits WANT leads to in SOURCE that TARGET does not have, children first.
+     * The branches and head commits of TARGET and its worktrees seed the commits both sides have. The walk from WANT
+       stops at these and at every other commit TARGET has, whose ancestors TARGET has too. It also stops at the
+       commits of SHALLOWINSOURCE, whose parents SOURCE does not have. */
+    private static ArrayList<ObjectId> negotiate(Repository source, ObjectId want, Repository target,
+                                                 HashSet<ObjectId> shallowInSource) {
+        HashSet<ObjectId> common = new HashSet<>();
+        for (File branch : Utils.listFiles(target.BRANCHES)) {
+            common.add(ObjectId.parse(Utils.readAsString(branch)));
+        }
+        for (File repository : target.worktreeRepositories()) {
+            common.add(ObjectId.parse(Utils.readAsString(Utils.subFile(repository, target.HEAD_COMMIT.getName()))));
+        }
+        
+        ArrayList<ObjectId> missing = new ArrayList<>();
+        HashSet<ObjectId> visited = new HashSet<>();
+        ArrayDeque<ObjectId> toVisit = new ArrayDeque<>();
+        toVisit.add(want);
+        while (!toVisit.isEmpty()) {
+            ObjectId commitID = toVisit.poll();
+            if (!visited.add(commitID) || common.contains(commitID) || target.objectExists(commitID, false)) {
+                continue;
+            }
+            missing.add(commitID);
+            Commit commit = source.readCommit(commitID);
+            if (shallowInSource.contains(commitID)) {
+                continue;
+            }
+            for (ObjectId parentID : new ObjectId[] {commit.parent(), commit.secondParent()}) {
+                if (parentID != null) {
+                    toVisit.add(parentID);
+                }
+            }
+        }
+        return missing;
+    }
+    
+    /* Helper function of transfer().
+     * Adds the commits MISSING of SOURCE into BUNDLE, with the blobs they introduce that TARGET does not have.
+     * Blobs already tracked by a parent are left out: TARGET has them, or gets them with that parent. */
+    private static void writeBundle(Bundle.Writer bundle, Repository source, Repository target,
+                                    ArrayList<ObjectId> missing, HashSet<ObjectId> shallowInSource)
+            throws IOException {
+        HashSet<ObjectId> sentBlobs = new HashSet<>();
+        for (ObjectId commitID : missing) {
+            byte[] contents = source.readObjectBytes(commitID, false);
+            bundle.add(Bundle.COMMIT, commitID, contents);
+            Commit commit = source.decodeCommit(contents, null);
+            HashSet<String> blobsOfParents = new HashSet<>();
+            if (!shallowInSource.contains(commitID)) {
+                for (ObjectId parentID : new ObjectId[] {commit.parent(), commit.secondParent()}) {
+                    if (parentID != null) {
+                        blobsOfParents.addAll(source.readCommit(parentID).trackingFiles().values());
+                    }
+                }
+            }
+            for (String blobID : commit.trackingFiles().values()) {
+                if (blobsOfParents.contains(blobID)) {
+                    continue;
+                }
+                ObjectId id = ObjectId.fromHex(blobID);
+                if (sentBlobs.add(id) && !target.objectExists(id, true)) {
+                    bundle.add(Bundle.BLOB, id, source.readObjectBytes(id, true));
+                }
+            }
+        }
+    }
+    
+    /* Returns whether the commit ANCESTORID is DESCENDANTID or one of its ancestors. */
+    boolean isAncestor(ObjectId ancestorID, ObjectId descendantID) {
+        if (!objectExists(ancestorID, false)) {
+            return false;
+        }
+        HashSet<ObjectId> shallow = readShallow();
+        HashSet<ObjectId> visited = new HashSet<>();
+        ArrayDeque<ObjectId> toVisit = new ArrayDeque<>();
+        toVisit.add(descendantID);
+        while (!toVisit.isEmpty()) {
+            ObjectId commitID = toVisit.poll();
+            if (commitID.equals(ancestorID)) {
+                return true;
+            } else if (!visited.add(commitID) || shallow.contains(commitID)) {
+                continue;
+            }
+            Commit commit = readCommit(commitID);
+            for (ObjectId parentID : new ObjectId[] {commit.parent(), commit.secondParent()}) {
+                if (parentID != null) {
+                    toVisit.add(parentID);
+                }
+            }
+        }
+        return false;
+    }
+    
+    /* Copies this GitPlit repository and puts it into DIR.
+     * Overwrites if a GitPlit repository already exists in DIR.
+     * Note that this method will also create the GitPlit related java & class files in DIR.
+       This will allow the user to run GitPlit from DIR without having to copy over the program files manually.
+     * Throws IllegalStateException if DIR is not a directory. */
+    public void cloneInto(File dir) throws IOException {
+        if (!Utils.exists(dir)) {
+            throw new IllegalStateException("Invalid path.");
+        } else if (!Utils.isDirectory(dir)) {
+            throw new IllegalStateException("The provided directory path does not lead to a directory.");
+        }
+        copyProgramFiles(CWD, dir);
+        copyInto(Utils.subFile(dir, DIRECTORY_NAME));
+    }
+    
+    /* Copies this GitPlit repository and puts it into DIR like cloneInto(), leaving out history and file contents a
+       job does not need.
+     * Only the commits within DEPTH commits of a branch or the head commit are copied, or all reachable commits if
+       DEPTH is 0. The commits whose parents were left out are listed in SHALLOW of the new repository.
+     * With PARTIAL, no blob is copied. PROMISOR of the new repository points at this one instead, and blobs are
+       fetched from it the first time they are read.
+     * Throws IllegalStateException if DIR is not a directory. */
+    public void cloneInto(File dir, int depth, boolean partial) throws IOException {
+        if (!Utils.exists(dir)) {
+            throw new IllegalStateException("Invalid path.");
+        } else if (!Utils.isDirectory(dir)) {
+            throw new IllegalStateException("The provided directory path does not lead to a directory.");
+        }
+        File target = Utils.subFile(dir, DIRECTORY_NAME);
+        copyProgramFiles(CWD, dir);
+        target.mkdir();
+        for (File f : new File[] {ADDITIONS, REMOVALS, BRANCHES, COMMITS, BLOBS, PACKS}) {
+            Utils.subFile(target, f.getName()).mkdir();
+        }
+        for (File f : new File[] {ADDITIONS, REMOVALS}) {
+            Utils.copyFiles(f, Utils.subFile(target, f.getName()));
+        }
+        Utils.copyFiles(BRANCHES, Utils.subFile(target, BRANCHES.getName()));
+        for (File f : new File[] {HEAD_COMMIT, CURRENT_BRANCH}) {
+            Utils.copyContents(f, Utils.subFile(target, f.getName()));
+        }
+        
+        HashSet<ObjectId> shallowInSource = readShallow();
+        HashMap<ObjectId, Integer> depths = new HashMap<>();
+        ArrayDeque<ObjectId> toCopy = new ArrayDeque<>();
+        for (File branch : Utils.listFiles(BRANCHES)) {
+            depths.put(ObjectId.fromHex(Utils.readAsString(branch)), 1);
+        }
+        depths.put(ObjectId.fromHex(Utils.readAsString(HEAD_COMMIT)), 1);
+        toCopy.addAll(depths.keySet());
+        
+        HashSet<ObjectId> copiedBlobs = new HashSet<>();
+        StringBuilder shallow = new StringBuilder();
+        while (!toCopy.isEmpty()) {
+            ObjectId commitID = toCopy.poll();
+            byte[] contents = readObjectBytes(commitID, false);
+            Utils.writeContents(Utils.subFile(Utils.subFile(target, COMMITS.getName()), commitID.toHex()), contents);
+            Commit commit = decodeCommit(contents, null);
+            for (String blobID : commit.trackingFiles().values()) {
+                ObjectId id = partial ? null : ObjectId.fromHex(blobID);
+                if (id != null && copiedBlobs.add(id)) {
+                    try (InputStream blob = openObject(id, true)) {
+                        writeObjectFile(Utils.subFile(Utils.subFile(target, BLOBS.getName()), blobID), blob);
+                    }
+                }
+            }
+            if (commit.parentID() == null) {
+                continue;
+            } else if (shallowInSource.contains(commitID) || (depth > 0 && depths.get(commitID) >= depth)) {
+                shallow.append(commitID).append("\n");
+                continue;
+            }
+            for (ObjectId parentID : new ObjectId[] {commit.parent(), commit.secondParent()}) {
+                if (parentID != null && !depths.containsKey(parentID)) {
+                    depths.put(parentID, depths.get(commitID) + 1);
+                    toCopy.add(parentID);
+                }
+            }
+        }
+        if (shallow.length() != 0) {
+            Utils.writeContents(Utils.subFile(target, SHALLOW.getName()), shallow.toString());
+        }
+        if (partial) {
+            Utils.writeContents(Utils.subFile(target, PROMISOR.getName()), absolutePath(COMMON));
+        }
+    }
+    
+    /* Helper function of cloneInto().
+     * Copies this GitPlit repository into TARGET. If it belongs to a worktree, the repository it shares is copied
+       instead, along with its head commit, current branch and staging area. The list of worktrees is left out either
+       way, since they do not share the copy. */
+    private void copyInto(File target) throws IOException {
+        target.mkdir();
+        Utils.copyFiles(COMMON, target);
+        File worktrees = Utils.subFile(target, WORKTREES.getName());
+        if (Utils.exists(worktrees)) {
+            for (File f : Utils.listFiles(worktrees)) {
+                f.delete();
+            }
+            worktrees.delete();
+        }
+        if (!Utils.exists(COMMONDIR)) {
+            return;
+        }
+        for (File f : new File[] {ADDITIONS, REMOVALS}) {
+            for (File staged : Utils.listFiles(Utils.subFile(target, f.getName()))) {
+                staged.delete();
+            }
+            Utils.copyFiles(f, Utils.subFile(target, f.getName()));
+        }
+        for (File f : new File[] {HEAD_COMMIT, CURRENT_BRANCH}) {
+            Utils.copyContents(f, Utils.subFile(target, f.getName()));
+        }
+    }
+    
+    /* Creates a worktree in DIR with the branch BRANCHNAME checked out.
+     * A worktree has its own head commit, current branch and staging area, and shares the commits, blobs and
+       branches of this repository, so that only the files tracked by BRANCHNAME are written. Its COMMONDIR names
+       the shared repository, whose WORKTREES lists the worktree so that gc() keeps its head commit.
+     * Like cloneInto(), also copies the GitPlit java & class files into DIR.
+     * Throws IllegalStateException unless DIR is a new or empty directory, and BRANCHNAME exists and is not checked
+       out anywhere else. */
+    public void addWorktree(File dir, String branchName) throws IOException {
+        File branch = Utils.subFile(BRANCHES, branchName);
+        if (!Utils.exists(branch)) {
+            throw new IllegalStateException("A branch with that name does not exist.");
+        } else if (Utils.exists(dir) && (!Utils.isDirectory(dir) || Utils.list(dir).length != 0)) {
+            throw new IllegalStateException("The provided path must lead to a new or empty directory.");
+        } else if (checkedOutIn(branchName) != null) {
+            throw new IllegalStateException("That branch is already checked out in "
+                                            + new File(absolutePath(checkedOutIn(branchName))).getParent() + ".");
+        }
+        File worktree = Utils.subFile(dir, DIRECTORY_NAME);
+        worktree.mkdirs();
+        Utils.subFile(worktree, ADDITIONS.getName()).mkdir();
+        Utils.subFile(worktree, REMOVALS.getName()).mkdir();
+        String commitID = Utils.readAsString(branch);
+        Utils.writeContents(Utils.subFile(worktree, HEAD_COMMIT.getName()), commitID);
+        Utils.writeContents(Utils.subFile(worktree, CURRENT_BRANCH.getName()), branchName);
+        Utils.writeContents(Utils.subFile(worktree, COMMONDIR.getName()), absolutePath(COMMON));
+        WORKTREES.mkdir();
+        Utils.writeContents(Utils.subFile(WORKTREES, Utils.sha3(absolutePath(worktree))), absolutePath(worktree));
+        
+        copyProgramFiles(CWD, dir);
+        for (HashMap.Entry<String, String> ent : readCommit(commitID).trackingFiles().entrySet()) {
+            copyBlob(ent.getValue(), Utils.subFile(dir, ent.getKey()));
+        }
+    }
+    
+    /* Returns the working directory of the repository and of each worktree sharing it, with their current branch. */
+    public LinkedHashMap<File, String> listWorktrees() {
+        LinkedHashMap<File, String> worktrees = new LinkedHashMap<>();
+        for (File repository : worktreeRepositories()) {
+            String branchName = Utils.readAsString(Utils.subFile(repository, CURRENT_BRANCH.getName()));
+            worktrees.put(new File(absolutePath(repository)).getParentFile(), branchName);
+        }
+        return worktrees;
+    }
+    
+    /* Copies the GitPlit java files and the gitplit class directory of DIRFROM and puts them into DIRTO.
+     * Java files missing from DIRFROM are skipped, and so is the class directory. */
+    static void copyProgramFiles(File dirFrom, File dirTo) throws IOException {
+        for (String programFile : PROGRAM_FILES) {
+            File from = Utils.subFile(dirFrom, programFile);
+            if (!Utils.exists(from)) {
+                continue;
+            }
+            Utils.subFile(dirTo, programFile).createNewFile();
+            Utils.copyContents(from, Utils.subFile(dirTo, programFile));
+        }
+        if (!Utils.isDirectory(Utils.subFile(dirFrom, "gitplit"))) {
+            return;
+        }
+        Utils.subFile(dirTo, "gitplit").mkdir();
+        Utils.copyFiles(Utils.subFile(dirFrom, "gitplit"), Utils.subFile(dirTo, "gitplit"));
+    }
+    
+}
\ No newline at end of file
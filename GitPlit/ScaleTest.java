@@ -0,0 +1,162 @@
+package gitplit;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/* Scale-test runner. Generates repositories of growing sizes with Generator and records the latency and
+   the peak heap of GitPlit commands run against each of them.
+ * Every generation and every command runs in its own JVM whose working directory is the generated repository,
+   so that the measurements are not polluted by each other. */
+public class ScaleTest {
+
+    /* Prefix of the line printed by a probe JVM once its command is done. */
+    private static final String PROBE_RESULT = "SCALETEST ";
+    /* Commands run against every generated repository unless the profile sets "scale.commands". */
+    private static final String DEFAULT_COMMANDS = "status;log;find initial commit";
+
+    /* Usage: java gitplit.ScaleTest [ProfilePath] [OutputDir] [Scale]...
+     * Prints one line per size and command, and writes the same results into OUTPUTDIR/scale-results.csv.
+     * The commands are listed in the "scale.commands" property of the profile, separated by ';'. */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("--probe")) {
+            probe(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        } else if (args.length < 3) {
+            System.out.println("Usage: java gitplit.ScaleTest [ProfilePath] [OutputDir] [Scale]...");
+            return;
+        }
+        File profile = new File(args[0]).getAbsoluteFile();
+        File outputDir = new File(args[1]);
+        if (!profile.exists()) {
+            System.out.println("Profile does not exist.");
+            return;
+        }
+        outputDir.mkdirs();
+        String[] commands = Generator.loadProfile(profile).getProperty("scale.commands", DEFAULT_COMMANDS)
+                                     .split(";");
+
+        StringBuilder csv = new StringBuilder("scale,command,millis,peak_heap_bytes\n");
+        System.out.printf("%-8s %-32s %12s %16s%n", "scale", "command", "millis", "peak heap (KB)");
+        for (int i = 2; i < args.length; i++) {
+            File repoDir = Utils.subFile(outputDir, "scale-" + args[i]);
+            if (repoDir.exists()) {
+                System.out.println(repoDir.getPath() + " already exists. Skipping.");
+                continue;
+            }
+            repoDir.mkdirs();
+            long[] generation = run(repoDir, "gitplit.Generator", profile.getPath(), args[i]);
+            report(csv, args[i], "(generate)", generation);
+            for (String command : commands) {
+                String[] probeArgs = ("--probe " + command.trim()).split(" ");
+                report(csv, args[i], command.trim(), run(repoDir, "gitplit.ScaleTest", probeArgs));
+            }
+        }
+        Utils.writeContents(Utils.subFile(outputDir, "scale-results.csv"), csv.toString());
+    }
+
+    /* Prints a result line and appends it to CSV. */
+    private static void report(StringBuilder csv, String scale, String command, long[] result) {
+        System.out.printf("%-8s %-32s %12d %16d%n", scale, command, result[0], result[1] / 1024);
+        csv.append(scale).append(',').append(command).append(',').append(result[0]).append(',')
+           .append(result[1]).append('\n');
+    }
+
+    /* Runs MAINCLASS with ARGS in a new JVM whose working directory is DIR.
+     * Returns the elapsed time in milliseconds and the peak heap usage in bytes.
+     * Probes report both themselves so that JVM startup is not included. Other classes are timed from outside
+       and report no heap usage. */
+    private static long[] run(File dir, String mainClass, String... args) throws IOException, InterruptedException {
+        ArrayList<String> command = new ArrayList<>();
+        command.add(Utils.subFile(new File(System.getProperty("java.home")), "bin/java").getPath());
+        command.add("-cp");
+        command.add(absoluteClassPath());
+        command.add(mainClass);
+        command.addAll(Arrays.asList(args));
+        ProcessBuilder builder = new ProcessBuilder(command).directory(dir).redirectErrorStream(true);
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        long[] result = {0, 0};
+        boolean probed = false;
+        try (BufferedReader output = new BufferedReader(
+                 new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                if (line.startsWith(PROBE_RESULT)) {
+                    String[] fields = line.substring(PROBE_RESULT.length()).split(" ");
+                    result[0] = Long.parseLong(fields[0]);
+                    result[1] = Long.parseLong(fields[1]);
+                    probed = true;
+                }
+            }
+        }
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException(mainClass + " failed in " + dir.getPath() + ".");
+        }
+        if (!probed) {
+            result[0] = (System.nanoTime() - start) / 1000000;
+        }
+        return result;
+    }
+
+    /* Returns the class path of this JVM with every entry made absolute. */
+    private static String absoluteClassPath() {
+        StringBuilder classPath = new StringBuilder();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (classPath.length() != 0) {
+                classPath.append(File.pathSeparator);
+            }
+            classPath.append(new File(entry).getAbsolutePath());
+        }
+        return classPath.toString();
+    }
+
+    /* Runs the GitPlit command ARGS with its output discarded, then prints its latency and the peak heap usage
+       of this JVM.
+     * The heap in use is sampled every millisecond while the command runs. The peaks of the memory pools are not
+       used, as they are reached at different times and their sum overstates the peak. */
+    private static void probe(String[] args) throws IOException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        AtomicLong peakHeap = new AtomicLong(memory.getHeapMemoryUsage().getUsed());
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException exc) {
+                    return;
+                }
+            }
+        });
+        sampler.setDaemon(true);
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long start = System.nanoTime();
+        sampler.start();
+        try {
+            Main.main(args);
+        } finally {
+            System.setOut(stdout);
+            sampler.interrupt();
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+        try {
+            sampler.join();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+        peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+        System.out.println(PROBE_RESULT + millis + " " + peakHeap.get());
+    }
+
+}
\ No newline at end of file
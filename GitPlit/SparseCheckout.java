@@ -0,0 +1,100 @@
+package gitplit;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+
+/* The files of a repository materialized in its working directory, chosen by the patterns of its sparse_checkout
+   file. Tracked files left out are never written, deleted or read by checkout, reset, merge and status, which treat
+   them as unchanged.
+ * The file holds one pattern per line, matched against file names: * matches any run of characters and ? any one
+   character. A file is included if it matches a pattern and no pattern starting with !. Blank lines and lines
+   starting with # are skipped.
+ * Patterns are compiled once: plain names are looked up in a set, and the others are joined into one regex. */
+class SparseCheckout {
+
+    /* Includes every file, for repositories without a sparse_checkout file. */
+    static final SparseCheckout ALL = new SparseCheckout(null);
+
+    private final List<String> patterns;
+    private final HashSet<String> includedNames = new HashSet<>();
+    private final HashSet<String> excludedNames = new HashSet<>();
+    private final Pattern included;
+    private final Pattern excluded;
+
+    /* Compiles PATTERNS, or includes every file if PATTERNS is null.
+     * Throws IllegalStateException if a pattern names a directory. */
+    SparseCheckout(List<String> patterns) {
+        this.patterns = patterns == null ? null : Collections.unmodifiableList(new ArrayList<>(patterns));
+        ArrayList<String> includedGlobs = new ArrayList<>();
+        ArrayList<String> excludedGlobs = new ArrayList<>();
+        for (String pattern : patterns == null ? new ArrayList<String>() : patterns) {
+            boolean negated = pattern.startsWith("!");
+            String glob = negated ? pattern.substring(1) : pattern;
+            if (glob.isEmpty() || glob.contains("/") || glob.contains("\\")) {
+                throw new IllegalStateException("Invalid pattern " + pattern + ": patterns match file names.");
+            } else if (glob.indexOf('*') < 0 && glob.indexOf('?') < 0) {
+                (negated ? excludedNames : includedNames).add(glob);
+            } else {
+                (negated ? excludedGlobs : includedGlobs).add(regex(glob));
+            }
+        }
+        included = includedGlobs.isEmpty() ? null : Pattern.compile(String.join("|", includedGlobs));
+        excluded = excludedGlobs.isEmpty() ? null : Pattern.compile(String.join("|", excludedGlobs));
+    }
+
+    /* Returns the patterns of the sparse_checkout file FILE, or ALL if there is none. */
+    static SparseCheckout read(File file) {
+        if (!Utils.isFile(file)) {
+            return ALL;
+        }
+        ArrayList<String> patterns = new ArrayList<>();
+        for (String line : Utils.readAsString(file).split("\n")) {
+            if (!line.isBlank() && !line.startsWith("#")) {
+                patterns.add(line.strip());
+            }
+        }
+        return new SparseCheckout(patterns);
+    }
+
+    /* Returns the patterns, or null if every file is included. */
+    List<String> patterns() {
+        return patterns;
+    }
+
+    /* Returns whether the file named FILENAME is materialized in the working directory. */
+    boolean includes(String fileName) {
+        if (patterns == null) {
+            return true;
+        } else if (excludedNames.contains(fileName) || excluded != null && excluded.matcher(fileName).matches()) {
+            return false;
+        }
+        return includedNames.contains(fileName) || included != null && included.matcher(fileName).matches();
+    }
+
+    /* Helper function of SparseCheckout() and Ignore().
+     * Returns the regex matching the file names GLOB matches. */
+    static String regex(String glob) {
+        StringBuilder regex = new StringBuilder("(?:");
+        int start = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > start) {
+                    regex.append(Pattern.quote(glob.substring(start, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                start = i + 1;
+            }
+        }
+        if (start < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(start)));
+        }
+        return regex.append(")").toString();
+    }
+
+}
\ No newline at end of file
@@ -1,15 +1,19 @@
 package gitplit;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.format.DateTimeFormatter;  
@@ -20,12 +24,41 @@ import java.util.Arrays;
 /* The utilities associated with hashing, serialization, file accessing, and commit creation. */
 class Utils {
     
+    /* Size of the chunks in which file contents are streamed. */
+    static final int BUFFER_SIZE = 1 << 16;
+    
     /* Creates a path to the subfile named CHILD. 
      * Note that this itself does not create the file, only its designation. */
     static File subFile(File parent, String child) {
         return Paths.get(parent.getPath(), child).toFile();
     }
     
+    /* File system lookups. Each one is counted by Perf as a file stat'd, then passed on to FILE or DIR. */
+    static boolean exists(File file) {
+        Perf.stat();
+        return file.exists();
+    }
+    
+    static boolean isFile(File file) {
+        Perf.stat();
+        return file.isFile();
+    }
+    
+    static boolean isDirectory(File file) {
+        Perf.stat();
+        return file.isDirectory();
+    }
+    
+    static String[] list(File dir) {
+        Perf.stat();
+        return dir.list();
+    }
+    
+    static File[] listFiles(File dir) {
+        Perf.stat();
+        return dir.listFiles();
+    }
+    
     /* Returns a SHA-3 hash representation of INPUT.
      * Relies on the SHA3-256 hashing algorithm to generate a unique, fixed-size 256-bit (32-byte) hash. 
      * Hashes are used to reference each commit and the files containing their information. 
@@ -33,16 +66,57 @@ class Utils {
      * Note that INPUT must be either a byte array or a String. 
      * Throws IllegalArgumentException if the system does not support SHA-3. */
     static String sha3(Object input) {
-        try {
-            MessageDigest digester = MessageDigest.getInstance("SHA3-256");
-            if (input instanceof byte[]) {
-                digester.update((byte[]) input);
-            } else if (input instanceof String) {
-                digester.update(((String) input).getBytes(StandardCharsets.UTF_8));
-            } else {
-                throw new IllegalArgumentException("Input must be a byte array or a String.");
+        Perf.PhaseEvent event = Perf.begin(Perf.Phase.HASH);
+        MessageDigest digester = sha3Digester();
+        byte[] bytes;
+        if (input instanceof byte[]) {
+            bytes = (byte[]) input;
+        } else if (input instanceof String) {
+            bytes = ((String) input).getBytes(StandardCharsets.UTF_8);
+        } else {
+            throw new IllegalArgumentException("Input must be a byte array or a String.");
+        }
+        digester.update(bytes);
+        String hash = sha3Helper(digester.digest());
+        Perf.end(event, null, bytes.length);
+        return hash;
+    }
+    
+    /* Returns the SHA-3 hash of the contents of FILE, the same as sha3() of its bytes.
+     * FILE is read in chunks of BUFFER_SIZE, so that its size is not bounded by the heap.
+     * Throws IllegalArgumentException if accessing FILE creates problems. */
+    static String sha3(File file) {
+        try (InputStream input = Files.newInputStream(file.toPath())) {
+            return copy(input, null, file);
+        } catch (IOException exc) {
+            throw new IllegalArgumentException(exc.getMessage());
+        }
+    }
+    
+    /* Streams INPUT into OUTPUT in chunks of BUFFER_SIZE and returns the SHA-3 hash of the streamed bytes, so that
+       contents are hashed and copied in one pass without being held in memory.
+     * OUTPUT may be null to only hash INPUT. Neither stream is closed. FILE names the streamed file for Perf. */
+    static String copy(InputStream input, OutputStream output, File file) throws IOException {
+        Perf.PhaseEvent event = Perf.begin(output == null ? Perf.Phase.READ : Perf.Phase.WRITE);
+        MessageDigest digester = sha3Digester();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        for (int n = input.read(buffer); n >= 0; n = input.read(buffer)) {
+            digester.update(buffer, 0, n);
+            if (output != null) {
+                output.write(buffer, 0, n);
             }
-            return sha3Helper(digester.digest()); 
+            total += n;
+        }
+        Perf.end(event, file, total);
+        return sha3Helper(digester.digest());
+    }
+    
+    /* Helper function of sha3() and copy().
+     * Throws IllegalArgumentException if the system does not support SHA-3. */
+    private static MessageDigest sha3Digester() {
+        try {
+            return MessageDigest.getInstance("SHA3-256");
         } catch (NoSuchAlgorithmException exc){
             throw new IllegalArgumentException(exc.getMessage());
         }
@@ -62,6 +136,24 @@ class Utils {
         return hexBuilder.toString();
     }
     
+    /* Converts the hexadecimal String HEX, such as the one returned by sha3Helper(), back into a byte array.
+     * Throws IllegalArgumentException if HEX is not made of hexadecimal digit pairs. */
+    static byte[] hexToBytes(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Hexadecimal strings must have an even length.");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Not a hexadecimal string.");
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+    
     /* Serializes OBJECT into a byte array and returns it.
      * Throws IllegalArgumentException if serializing creates problems. */
     static byte[] serialize(Serializable object) {
@@ -80,16 +172,30 @@ class Utils {
      * FILE must be a normal file, not a directory. 
      * Throws IllegalArgumentException if accessing FILE creates problems. */
     static byte[] readAsBytes(File file) {
-        if (file.isDirectory()) {
+        if (isDirectory(file)) {
             throw new IllegalArgumentException("Cannot read directories.");
         }
         try {
-            return Files.readAllBytes(file.toPath());
+            Perf.PhaseEvent event = Perf.begin(Perf.Phase.READ);
+            byte[] contents = Files.readAllBytes(file.toPath());
+            Perf.end(event, file, contents.length);
+            return contents;
         } catch (IOException exc){
             throw new IllegalArgumentException(exc.getMessage());
         }
     }
     
+    /* Returns whether FILE1 and FILE2 have the same contents, comparing them chunk by chunk rather than reading them
+       as a whole.
+     * Throws IllegalArgumentException if accessing either file creates problems. */
+    static boolean sameContents(File file1, File file2) {
+        try {
+            return Files.mismatch(file1.toPath(), file2.toPath()) == -1;
+        } catch (IOException exc) {
+            throw new IllegalArgumentException(exc.getMessage());
+        }
+    }
+    
     /* Reads FILE and returns its contents as a String.
      * FILE must be a normal file, not a directory. 
      * Throws IllegalArgumentException if accessing FILE creates problems. */
@@ -97,19 +203,9 @@ class Utils {
         return new String(readAsBytes(file), StandardCharsets.UTF_8);
     }
     
-    /* Converts the file content in bytes INFO to String and returns it. 
-     * Throws IllegalArgumentException if rewriting INFO creates problems. */
-    static String byteToString(byte[] info) throws IOException {
-        try {
-            File temp = new File("temp");
-            temp.createNewFile();
-            Utils.writeContents(temp, info);
-            String infoInString = Utils.readAsString(temp);
-            temp.delete();
-            return infoInString;
-        } catch (IOException exc) {
-            throw new IllegalArgumentException(exc.getMessage());
-        }
+    /* Converts the file content in bytes INFO to String and returns it. */
+    static String byteToString(byte[] info) {
+        return new String(info, StandardCharsets.UTF_8);
     }
     
     /* Overwrites FILE with INFO.
@@ -118,29 +214,66 @@ class Utils {
      * Throws IllegalArgumentException if accessing FILE or casting create problems. */
     static void writeContents(File file, Object info) {
         try {
-            if (file.isDirectory()) {
+            if (isDirectory(file)) {
                 throw new IllegalArgumentException("Cannot overwrite directories.");
             }
+            Perf.PhaseEvent event = Perf.begin(Perf.Phase.WRITE);
+            byte[] bytes = info instanceof byte[] ? (byte[]) info : ((String) info).getBytes(StandardCharsets.UTF_8);
             BufferedOutputStream source = new BufferedOutputStream(Files.newOutputStream(file.toPath()));
-            if (info instanceof byte[]) {
-                source.write((byte[]) info);
-            } else {
-                source.write(((String) info).getBytes(StandardCharsets.UTF_8));
-            }
+            source.write(bytes);
             source.close();
+            Perf.end(event, file, bytes.length);
         } catch (IOException | ClassCastException exc) {
             throw new IllegalArgumentException(exc.getMessage());
         }
     }
     
+    /* Writes the contents read from CONTENTS into FILE under a temporary name in the directory TEMPDIR, which must be
+       on the same file system, then renames it over FILE, so that readers never see a partial file.
+     * CONTENTS is streamed, so that its size is not bounded by the heap. It is not closed.
+     * Throws IllegalArgumentException if accessing the files creates problems. */
+    static void writeAtomically(File file, File tempDir, InputStream contents) {
+        file.getParentFile().mkdirs();
+        File temp = null;
+        try {
+            temp = File.createTempFile("incoming-", "", tempDir);
+            try (OutputStream output = Files.newOutputStream(temp.toPath())) {
+                copy(contents, output, file);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException exc) {
+            throw new IllegalArgumentException(exc.getMessage());
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+    
+    /* Writes CONTENTS into FILE like writeAtomically() above, with the temporary file next to FILE. */
+    static void writeAtomically(File file, byte[] contents) {
+        writeAtomically(file, file.getParentFile(), new ByteArrayInputStream(contents));
+    }
+    
     /* Returns an object of type T read from FILE. 
      * The object read from FILE must be castable into OFFEREDCLASS. 
+     * FILE is read at once so that reading and decoding show up as separate phases in Perf.
      * Throws IllegalArgumentException if accessing FILE or casting create problems. */
     static <T extends Serializable> T readObject(File file, Class<T> offeredClass) {
+        return deserialize(readAsBytes(file), file, offeredClass);
+    }
+    
+    /* Returns an object of type T deserialized from CONTENTS, read from FILE (may be null).
+     * The object must be castable into OFFEREDCLASS. 
+     * Throws IllegalArgumentException if decoding or casting create problems. */
+    static <T extends Serializable> T deserialize(byte[] contents, File file, Class<T> offeredClass) {
         try {
-            ObjectInputStream source = new ObjectInputStream(Files.newInputStream(file.toPath()));
+            Perf.PhaseEvent event = Perf.begin(Perf.Phase.DECODE);
+            ObjectInputStream source = new ObjectInputStream(new ByteArrayInputStream(contents));
             T result = offeredClass.cast(source.readObject());
             source.close();
+            Perf.end(event, file, contents.length);
             return result;
         } catch (IOException | ClassCastException | ClassNotFoundException exc) {
             throw new IllegalArgumentException(exc.getMessage());
@@ -158,20 +291,29 @@ class Utils {
      * Throws IllegalArgumentException if accessing files of DIRFROM or file creation create problems. */
     static void copyFiles(File dirFrom, File dirTo) {
         try {
-            for (File f : dirFrom.listFiles()) {
-                if (f.isDirectory()) {
+            for (File f : listFiles(dirFrom)) {
+                if (isDirectory(f)) {
                     Utils.subFile(dirTo, f.getName()).mkdir();
                     copyFiles(Utils.subFile(dirFrom, f.getName()), Utils.subFile(dirTo, f.getName()));
                     continue;
                 }
                 Utils.subFile(dirTo, f.getName()).createNewFile();
-                Base.copyContents(f, Utils.subFile(dirTo, f.getName()));
+                copyContents(f, Utils.subFile(dirTo, f.getName()));
             }
         } catch (IOException exc) {
             throw new IllegalArgumentException(exc.getMessage());
         }
     }
     
+    /* Copies the contents of FROM to TO, without reading them into memory. */
+    static void copyContents(File from, File to) {
+        try {
+            Files.copy(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException exc) {
+            throw new IllegalArgumentException(exc.getMessage());
+        }
+    }
+    
     /* Returns the string array ARGS sliced from the starting index INDEX to the end.
      * The returned object will be a String. */
     static String restOfArgs(String[] args, int index) {
@@ -182,6 +324,13 @@ class Utils {
         return sb.toString();
     }
     
+    /* Scrambles the bits of VALUE, as the finalizer of SplitMix64 does. */
+    static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+    
     /* Returns the current time in String. */
     static String getCurrentTime() {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");  